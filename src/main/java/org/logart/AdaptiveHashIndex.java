@@ -0,0 +1,134 @@
+package org.logart;
+
+import org.logart.node.BTreeNode;
+
+import java.util.Arrays;
+
+/**
+ * Self tuning hash index of keys of hot leaves, a point lookup of an indexed key goes straight to its leaf and slot
+ * and skips all internal levels.
+ * <p>
+ * Every descent records the leaf it ends in, keys are indexed only once their leaf has seen repeated lookups.
+ * Entries live in a set associative table like {@link ValueCache}, an entry of a hotter leaf is not replaced
+ * by an entry of a colder one.
+ * <p>
+ * Published pages never change, so an entry stays valid until its leaf is replaced by a copy-on-write update.
+ * Writers stamp every page they replace before the new root is published, see {@link WriteStamps}, an entry
+ * recorded before its leaf was stamped is never used again, even if the page id is reused later.
+ */
+public class AdaptiveHashIndex {
+    static final int WAYS = 4;
+    // lookups of a leaf before its keys are indexed
+    static final int ADMIT_FREQUENCY = 2;
+
+    private final Entry[] entries;
+    private final int setMask;
+    private final FrequencySketch leafFrequencies;
+    private final WriteStamps stamps = new WriteStamps();
+
+    /**
+     * @param maxEntries max number of indexed keys, rounded up to a power of two
+     */
+    public AdaptiveHashIndex(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Index needs at least one entry, got " + maxEntries);
+        }
+        int sets = Integer.highestOneBit(((maxEntries + WAYS - 1) / WAYS) * 2 - 1);
+        this.entries = new Entry[sets * WAYS];
+        this.setMask = sets - 1;
+        this.leafFrequencies = new FrequencySketch(entries.length);
+    }
+
+    /**
+     * @return epoch to record a leaf found after this call with
+     */
+    long epoch() {
+        return stamps.epoch();
+    }
+
+    /**
+     * Called under a locked version, the leaf of a valid entry is reachable from it or from a newer version.
+     *
+     * @return indexed leaf and slot of the key, null if the key is not indexed
+     */
+    Entry find(byte[] key) {
+        long hash = KeyFilter.hash(key);
+        int set = set(hash);
+        for (int way = 0; way < WAYS; way++) {
+            Entry entry = entries[set + way];
+            if (entry != null && entry.hash == hash && Arrays.equals(entry.key, key)) {
+                if (!stamps.isValid(leafHash(entry.leafId), entry.epoch)) {
+                    return null;
+                }
+                leafFrequencies.record(leafHash(entry.leafId));
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the leaf a descent for the key ended in, the key is indexed once the leaf is hot enough.
+     *
+     * @param epoch taken before the version the leaf was found in was locked
+     */
+    void record(byte[] key, BTreeNode leaf, long epoch) {
+        long leafHash = leafHash(leaf.id());
+        leafFrequencies.record(leafHash);
+        int frequency = leafFrequencies.frequency(leafHash);
+        if (frequency < ADMIT_FREQUENCY || !stamps.isValid(leafHash, epoch)) {
+            return;
+        }
+        int slot = leaf.indexOf(key);
+        if (slot < 0) {
+            return;
+        }
+        long hash = KeyFilter.hash(key);
+        Entry entry = new Entry(hash, key.clone(), leaf.id(), slot, epoch);
+        int set = set(hash);
+        int victim = -1;
+        int victimFrequency = Integer.MAX_VALUE;
+        for (int way = 0; way < WAYS; way++) {
+            Entry current = entries[set + way];
+            if (current == null || (current.hash == hash && Arrays.equals(current.key, key))
+                    || !stamps.isValid(leafHash(current.leafId), current.epoch)) {
+                entries[set + way] = entry;
+                return;
+            }
+            int currentFrequency = leafFrequencies.frequency(leafHash(current.leafId));
+            if (currentFrequency < victimFrequency) {
+                victim = set + way;
+                victimFrequency = currentFrequency;
+            }
+        }
+        if (frequency > victimFrequency) {
+            entries[victim] = entry;
+        }
+    }
+
+    /**
+     * @return epoch of a new write, the writer stamps pages it replaces with it
+     */
+    long beginWrite() {
+        return stamps.advance();
+    }
+
+    /**
+     * Called by the writer before the version without the page is published.
+     */
+    void retire(long pageId, long epoch) {
+        stamps.stamp(leafHash(pageId), epoch);
+    }
+
+    private int set(long hash) {
+        return ((int) hash & setMask) * WAYS;
+    }
+
+    private static long leafHash(long pageId) {
+        // fibonacci hashing, stripes and sketch counters are picked by high bits
+        return pageId * 0x9E37_79B9_7F4A_7C15L;
+    }
+
+    record Entry(long hash, byte[] key, long leafId, int slot, long epoch) {
+    }
+}
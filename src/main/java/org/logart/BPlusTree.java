@@ -1,12 +1,43 @@
 package org.logart;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.Function;
+
 public interface BPlusTree {
 
     void load();
 
     byte[] get(byte[] key);
 
+    /**
+     * Hands a read-only view of the value to the reader without copying it out of the page.
+     * The view is valid only inside the reader, copy what has to outlive the call.
+     *
+     * @return result of the reader, null if the key is missing, the reader is not called then
+     */
+    <R> R get(byte[] key, Function<ByteBuffer, R> reader);
+
+    /**
+     * Looks up all keys in a single version with one descent for the whole batch.
+     *
+     * @return values in the order of the given keys, null for missing keys
+     */
+    List<byte[]> multiGet(List<byte[]> keys);
+
+    /**
+     * Opens a consistent view of the current version, it has to be closed to let old pages be freed.
+     */
+    Snapshot snapshot();
+
     void put(byte[] key, byte[] value);
 
+    void delete(byte[] key);
+
+    /**
+     * Deletes all keys in [from, to).
+     */
+    void deleteRange(byte[] from, byte[] to);
+
     void close();
 }
@@ -3,84 +3,346 @@ package org.logart;
 import org.logart.node.BTreeNode;
 import org.logart.node.DefaultBTreeNode;
 import org.logart.node.NodeManager;
+import org.logart.tree.DeleteHandler;
+import org.logart.tree.DeleteResult;
+import org.logart.tree.MultiGetHandler;
+import org.logart.tree.PathStack;
 import org.logart.tree.PutHandler;
 import org.logart.tree.PutResult;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class DefaultBPlusTree implements BPlusTree {
     private final NodeManager nodeManager;
     private final PutHandler putHandler;
+    private final DeleteHandler deleteHandler;
+    private final MultiGetHandler multiGetHandler;
+    private final KeyFilter keyFilter;
+    private final ValueCache valueCache;
+    private final AdaptiveHashIndex hashIndex;
 
     public DefaultBPlusTree(NodeManager nodeManager) {
+        this(nodeManager, null);
+    }
+
+    public DefaultBPlusTree(NodeManager nodeManager, KeyFilter keyFilter) {
+        this(nodeManager, keyFilter, null);
+    }
+
+    /**
+     * @param keyFilter  filter of keys checked by point lookups before the descent, null to look up every key
+     * @param valueCache cache of values of hot keys checked by {@link #get(byte[])}, null to read every value from the tree
+     */
+    public DefaultBPlusTree(NodeManager nodeManager, KeyFilter keyFilter, ValueCache valueCache) {
+        this(nodeManager, keyFilter, valueCache, null);
+    }
+
+    /**
+     * @param hashIndex index of keys of hot leaves used by {@link #get(byte[])} to skip internal levels, null to always descend
+     */
+    public DefaultBPlusTree(NodeManager nodeManager, KeyFilter keyFilter, ValueCache valueCache, AdaptiveHashIndex hashIndex) {
         this.nodeManager = nodeManager;
+        this.keyFilter = keyFilter;
+        this.valueCache = valueCache;
+        this.hashIndex = hashIndex;
         this.putHandler = new PutHandler(nodeManager);
+        this.deleteHandler = new DeleteHandler(nodeManager);
+        this.multiGetHandler = new MultiGetHandler(nodeManager);
     }
 
     @Override
     public void load() {
         nodeManager.open();
+        if (keyFilter != null && !keyFilter.load(rootId())) {
+            rebuildKeyFilter(keyFilter.capacity());
+        }
     }
 
     @Override
     public byte[] get(byte[] key) {
+        if (valueCache == null) {
+            return read(key);
+        }
+        byte[] cached = valueCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        // taken before the version is locked, a write published in between leaves the entry invalid
+        long epoch = valueCache.epoch();
+        byte[] value = read(key);
+        if (value != null) {
+            valueCache.offer(key, value, epoch);
+        }
+        return value;
+    }
+
+    private byte[] read(byte[] key) {
+        // taken before the version is locked, like the value cache epoch
+        long epoch = hashIndex != null ? hashIndex.epoch() : 0;
         Versioned<BTreeNode> versionedRoot = nodeManager.lockVersion();
         try {
-            return recursiveGet(key, versionedRoot.get(), versionedRoot.version());
+            // checked after the version is locked, bits of keys in this version are visible then
+            if (keyFilter != null && !keyFilter.mightContain(key)) {
+                return null;
+            }
+            if (hashIndex != null) {
+                byte[] indexed = readIndexed(key);
+                if (indexed != null) {
+                    return indexed;
+                }
+            }
+            BTreeNode node = nodeManager.findBelowUpperLevels(versionedRoot, key);
+            while (!node.isLeaf()) {
+                node = nodeManager.readNode(node.findChild(key));
+            }
+            if (hashIndex != null) {
+                hashIndex.record(key, node, epoch);
+            }
+            return node.get(key);
         } finally {
             nodeManager.releaseVersion(versionedRoot);
         }
     }
 
-    private byte[] recursiveGet(byte[] key, BTreeNode node, long version) {
-        assert (node != null) : "At version: " + version
-                + " version ref counter is: " + nodeManager.refCounter().getRefCount(version)
-                + " available version are: " + nodeManager.refCounter().toString()
-                + " Node: " + node + ", key: " + new String(key);
-        if (node.isLeaf()) {
-            return node.get(key);
+    /**
+     * @return value read from the indexed leaf slot, null if the key is not indexed
+     */
+    private byte[] readIndexed(byte[] key) {
+        AdaptiveHashIndex.Entry indexed = hashIndex.find(key);
+        if (indexed == null) {
+            return null;
         }
-        long next = node.findChild(key);
+        BTreeNode leaf = nodeManager.readNode(indexed.leafId());
+        byte[][] entry = leaf != null ? leaf.get(indexed.slot()) : null;
+        return entry != null && Arrays.equals(entry[0], key) ? entry[1] : null;
+    }
+
+    @Override
+    public <R> R get(byte[] key, Function<ByteBuffer, R> reader) {
+        Versioned<BTreeNode> versionedRoot = nodeManager.lockVersion();
         try {
-            return recursiveGet(key, nodeManager.readNode(next), version);
-        } catch (NullPointerException | AssertionError e) {
-            System.out.println("At version: " + version
-                    + " version ref counter is: " + nodeManager.refCounter().getRefCount(version)
-                    + " available version are: " + nodeManager.refCounter().toString()
-                    + " Node: " + node + ", key: " + new String(key)
-            );
-            throw e;
+            if (keyFilter != null && !keyFilter.mightContain(key)) {
+                return null;
+            }
+            BTreeNode node = nodeManager.findBelowUpperLevels(versionedRoot, key);
+            while (!node.isLeaf()) {
+                node = nodeManager.readNode(node.findChild(key));
+            }
+            // the version stays locked while the reader runs, so the page can't be freed under the view
+            ByteBuffer value = node.getView(key);
+            return value != null
+                    ? reader.apply(value)
+                    : null;
+        } finally {
+            nodeManager.releaseVersion(versionedRoot);
         }
     }
 
+    @Override
+    public List<byte[]> multiGet(List<byte[]> keys) {
+        Versioned<BTreeNode> versionedRoot = nodeManager.lockVersion();
+        try {
+            return multiGetHandler.multiGet(versionedRoot.get(), keys);
+        } finally {
+            nodeManager.releaseVersion(versionedRoot);
+        }
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        return new Snapshot(nodeManager, multiGetHandler);
+    }
+
     @Override
     public void put(byte[] key, byte[] value) {
         boolean rootUpdated = false;
         PutResult put = null;
         Versioned<BTreeNode> currentVersionedRoot = null;
         synchronized (this) {
+            if (keyFilter != null) {
+                // before the version with the key is published, a failed attempt only leaves a false positive
+                keyFilter.add(key);
+            }
+            if (valueCache != null) {
+                valueCache.invalidate(key);
+            }
             while (!rootUpdated) {
                 currentVersionedRoot = nodeManager.lockVersion();
                 try {
                     put = putHandler.put(currentVersionedRoot.get(), key, value, currentVersionedRoot.version());
+                    if (hashIndex != null) {
+                        retire(put.path());
+                    }
                     rootUpdated = nodeManager.advanceVersion(currentVersionedRoot, put.nodeCopy());
+                    if (!rootUpdated) {
+                        discardAll(put.path());
+                    }
                 } finally {
                     nodeManager.releaseVersion(currentVersionedRoot);
                 }
             }
+            if (keyFilter != null && keyFilter.isSaturated()) {
+                rebuildKeyFilter(keyFilter.capacity());
+            }
         }
         // write, free node and return
-        for (long oldNodeId : put.oldNodes()) {
-            nodeManager.freeNode(oldNodeId, currentVersionedRoot.version());
+        freeReplaced(put.path(), currentVersionedRoot.version());
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        applyDelete(root -> deleteHandler.delete(root, key), () -> valueCache.invalidate(key));
+    }
+
+    @Override
+    public void deleteRange(byte[] from, byte[] to) {
+        applyDelete(root -> deleteHandler.deleteRange(root, from, to), () -> valueCache.invalidateAll());
+    }
+
+    /**
+     * @param invalidate drops cached values of deleted keys, runs under the writer lock before the delete is published
+     */
+    private void applyDelete(Function<BTreeNode, DeleteResult> delete, Runnable invalidate) {
+        boolean rootUpdated = false;
+        DeleteResult deleted = null;
+        Versioned<BTreeNode> currentVersionedRoot = null;
+        synchronized (this) {
+            if (valueCache != null) {
+                invalidate.run();
+            }
+            while (!rootUpdated) {
+                currentVersionedRoot = nodeManager.lockVersion();
+                try {
+                    deleted = delete.apply(currentVersionedRoot.get());
+                    if (deleted == null) {
+                        // nothing to delete, current version stays
+                        return;
+                    }
+                    if (hashIndex != null) {
+                        retire(deleted.oldNodes());
+                    }
+                    rootUpdated = nodeManager.advanceVersion(currentVersionedRoot, deleted.nodeCopy());
+                    if (!rootUpdated) {
+                        discardAll(deleted.newNodes());
+                    }
+                } finally {
+                    nodeManager.releaseVersion(currentVersionedRoot);
+                }
+            }
+        }
+        freeReplaced(deleted.oldNodes(), deleted.newNodes(), currentVersionedRoot.version());
+    }
+
+    // stamped before the new root is published, so index entries pointing into replaced leaves are not used again
+    private void retire(PathStack path) {
+        long epoch = hashIndex.beginWrite();
+        for (int i = 0; i < path.oldCount(); i++) {
+            hashIndex.retire(path.oldId(i), epoch);
         }
     }
 
+    private void retire(Set<Long> oldNodes) {
+        long epoch = hashIndex.beginWrite();
+        for (long oldNodeId : oldNodes) {
+            hashIndex.retire(oldNodeId, epoch);
+        }
+    }
+
+    // another writer published its version first, nothing allocated by this attempt is reachable
+    private void discardAll(Set<Long> newNodes) {
+        for (long newNodeId : newNodes) {
+            nodeManager.discardNode(newNodeId);
+        }
+    }
+
+    private void discardAll(PathStack path) {
+        for (int i = 0; i < path.newCount(); i++) {
+            nodeManager.discardNode(path.newId(i));
+        }
+    }
+
+    // ids go to the reclaimer in the arrays of the path, so a put does not box them
+    private void freeReplaced(PathStack path, long version) {
+        int published = path.partitionPublished();
+        for (int i = published; i < path.oldCount(); i++) {
+            // allocated and replaced by the same write, it was never published
+            nodeManager.discardNode(path.oldId(i));
+        }
+        nodeManager.freeNodes(path.oldIds(), published, version);
+    }
+
+    private void freeReplaced(Set<Long> oldNodes, Set<Long> newNodes, long version) {
+        long[] retired = new long[oldNodes.size()];
+        int count = 0;
+        for (long oldNodeId : oldNodes) {
+            if (newNodes.contains(oldNodeId)) {
+                // allocated and replaced by the same write, it was never published
+                nodeManager.discardNode(oldNodeId);
+            } else {
+                retired[count++] = oldNodeId;
+            }
+        }
+        nodeManager.freeNodes(retired, count, version);
+    }
+
     @Override
     public void close() {
+        if (keyFilter != null) {
+            keyFilter.save(rootId());
+        }
         nodeManager.close();
     }
 
+    private long rootId() {
+        Versioned<BTreeNode> versionedRoot = nodeManager.lockVersion();
+        try {
+            return versionedRoot.get().id();
+        } finally {
+            nodeManager.releaseVersion(versionedRoot);
+        }
+    }
+
+    /**
+     * Rebuilds the filter with the given capacity, the filter grows to twice the number of keys in the tree
+     * only if the tree holds more keys than that, deleted keys and updates do not make it grow.
+     */
+    private void rebuildKeyFilter(long expectedKeys) {
+        long keys = keyFilter.rebuild(expectedKeys, this::forEachKey);
+        if (keys > expectedKeys) {
+            keyFilter.rebuild(Math.max(expectedKeys, 2 * keys), this::forEachKey);
+        }
+    }
+
+    private void forEachKey(Consumer<byte[]> action) {
+        Versioned<BTreeNode> versionedRoot = nodeManager.lockVersion();
+        try {
+            forEachKey(versionedRoot.get(), action);
+        } finally {
+            nodeManager.releaseVersion(versionedRoot);
+        }
+    }
+
+    private void forEachKey(BTreeNode node, Consumer<byte[]> action) {
+        if (node.isLeaf()) {
+            for (int i = 0; i < node.numKeys(); i++) {
+                action.accept(node.get(i)[0]);
+            }
+            return;
+        }
+        for (int i = 0; i <= node.numKeys(); i++) {
+            long childId = node.child(i);
+            if (childId != -1) {
+                forEachKey(nodeManager.readNode(childId), action);
+            }
+        }
+    }
+
     // this implementation uses list and not set since it is used for debugging purposes,
     // and part of testing and debugging is to make sure no page is referenced twice
     public List<Long> collectReachablePageIds() {
@@ -0,0 +1,46 @@
+package org.logart;
+
+/**
+ * Count-min sketch of 4 bit access counters with two probes, counters are halved from time to time,
+ * so keys hot a while ago give way to the current ones.
+ * <p>
+ * Counters are racy, a lost increment only makes the estimate a bit lower.
+ */
+final class FrequencySketch {
+    private static final int MAX_FREQUENCY = 15;
+
+    private final byte[] counters;
+    private final int mask;
+    private final int resetAfter;
+    private int samples;
+
+    /**
+     * @param entries number of entries of the cache the sketch admits to, a power of two
+     */
+    FrequencySketch(int entries) {
+        this.counters = new byte[entries * 4];
+        this.mask = counters.length - 1;
+        this.resetAfter = entries * 10;
+    }
+
+    void record(long hash) {
+        int first = (int) (hash >>> 16) & mask;
+        int second = (int) (hash >>> 32) & mask;
+        if (counters[first] < MAX_FREQUENCY) {
+            counters[first]++;
+        }
+        if (counters[second] < MAX_FREQUENCY) {
+            counters[second]++;
+        }
+        if (++samples >= resetAfter) {
+            samples = 0;
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] >>= 1;
+            }
+        }
+    }
+
+    int frequency(long hash) {
+        return Math.min(counters[(int) (hash >>> 16) & mask], counters[(int) (hash >>> 32) & mask]);
+    }
+}
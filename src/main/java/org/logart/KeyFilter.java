@@ -0,0 +1,236 @@
+package org.logart;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Tree level Bloom filter of keys, a get of a key the filter has never seen returns before the descent.
+ * <p>
+ * The filter is split into blocks of one cache line, all bits of a key are in the block picked by its hash,
+ * so a check reads one cache line. Keys are added by writers before the version with the key is published,
+ * so a reader which sees the version sees the bits too. Deleted keys stay in the filter until it is rebuilt.
+ * Only keys which set a new bit are counted, so updates of present keys do not fill the filter. Once more keys
+ * than expected are counted, it is rebuilt from the tree, with twice as many keys as the tree holds if that is
+ * more than the capacity.
+ * <p>
+ * A persistent filter is written to its file when the tree is closed, along with the id of the root it was built for.
+ * The file is removed when it is loaded, so after a crash the filter is rebuilt from the tree instead of missing
+ * keys written after the last close.
+ */
+public class KeyFilter {
+    private static final int MAGIC = 0x4B46_0001;
+    private static final int BLOCK_WORDS = 8;               // 64 byte blocks
+    private static final int BLOCK_BITS = BLOCK_WORDS * Long.SIZE;
+
+    private final Path file;
+    private final int bitsPerKey;
+    private volatile Bits bits;
+    private long added;
+
+    private KeyFilter(Path file, long expectedKeys, int bitsPerKey) {
+        if (expectedKeys <= 0 || bitsPerKey <= 0) {
+            throw new IllegalArgumentException("Filter needs positive expected keys and bits per key, got "
+                    + expectedKeys + " and " + bitsPerKey);
+        }
+        this.file = file;
+        this.bitsPerKey = bitsPerKey;
+        this.bits = new Bits(expectedKeys, bitsPerKey);
+    }
+
+    /**
+     * Filter kept in memory only, it is rebuilt from the tree on load.
+     */
+    public static KeyFilter inMemory(long expectedKeys, int bitsPerKey) {
+        return new KeyFilter(null, expectedKeys, bitsPerKey);
+    }
+
+    /**
+     * Filter saved to the given file on close and read back on load if the tree was not changed in between.
+     */
+    public static KeyFilter persistent(Path file, long expectedKeys, int bitsPerKey) {
+        return new KeyFilter(file, expectedKeys, bitsPerKey);
+    }
+
+    /**
+     * @return false if the key was never added, true if it might have been
+     */
+    public boolean mightContain(byte[] key) {
+        return bits.mightContain(hash(key));
+    }
+
+    /**
+     * Called by the single writer before the version with the key is published.
+     * A key whose bits are all set already, an update of a present key or a false positive, is not counted.
+     */
+    void add(byte[] key) {
+        if (bits.add(hash(key))) {
+            added++;
+        }
+    }
+
+    /**
+     * @return true if more keys were added than the filter was sized for, false positives grow quickly after that
+     */
+    boolean isSaturated() {
+        return added > bits.capacity;
+    }
+
+    /**
+     * Builds a new filter from the keys of the tree and swaps it in, readers keep using the old one until then.
+     *
+     * @return number of keys scanned
+     */
+    long rebuild(long expectedKeys, Consumer<Consumer<byte[]>> keys) {
+        Bits rebuilt = new Bits(expectedKeys, bitsPerKey);
+        long[] count = new long[1];
+        keys.accept(key -> {
+            rebuilt.add(hash(key));
+            count[0]++;
+        });
+        added = count[0];
+        bits = rebuilt;
+        return count[0];
+    }
+
+    long capacity() {
+        return bits.capacity;
+    }
+
+    /**
+     * Reads the saved filter if it was saved for the given root and removes the file.
+     *
+     * @return false if there is no usable saved filter, it has to be rebuilt then
+     */
+    boolean load(long rootId) {
+        if (file == null) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readLong() != rootId) {
+                return false;
+            }
+            long savedAdded = in.readLong();
+            long capacity = in.readLong();
+            Bits loaded = new Bits(capacity, bitsPerKey);
+            if (in.readInt() != loaded.hashes || in.readInt() != loaded.words.length) {
+                return false;
+            }
+            for (int i = 0; i < loaded.words.length; i++) {
+                loaded.words[i] = in.readLong();
+            }
+            added = savedAdded;
+            bits = loaded;
+            return true;
+        } catch (NoSuchFileException | EOFException e) {
+            // never saved or cut short
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read key filter " + file, e);
+        } finally {
+            delete();
+        }
+    }
+
+    /**
+     * Saves the filter for the given root, no-op for in-memory filters.
+     */
+    void save(long rootId) {
+        if (file == null) {
+            return;
+        }
+        Bits current = bits;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(rootId);
+            out.writeLong(added);
+            out.writeLong(current.capacity);
+            out.writeInt(current.hashes);
+            out.writeInt(current.words.length);
+            for (long word : current.words) {
+                out.writeLong(word);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write key filter " + file, e);
+        }
+    }
+
+    private void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not remove key filter " + file, e);
+        }
+    }
+
+    static long hash(byte[] key) {
+        long hash = 0x9E37_79B9_7F4A_7C15L ^ key.length;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xFF)) * 0x1000_0000_01B3L;
+        }
+        // murmur3 finalizer, so every bit of the key affects all bits of the hash
+        hash ^= hash >>> 33;
+        hash *= 0xFF51_AFD7_ED55_8CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CE_B9FE_1A85_EC53L;
+        return hash ^ hash >>> 33;
+    }
+
+    private static final class Bits {
+        private final long capacity;
+        private final int blocks;
+        private final int hashes;
+        private final long[] words;
+
+        private Bits(long capacity, int bitsPerKey) {
+            long totalBits = Math.max(BLOCK_BITS, capacity * bitsPerKey);
+            this.capacity = capacity;
+            this.blocks = (int) Math.min(Integer.MAX_VALUE / BLOCK_WORDS, (totalBits + BLOCK_BITS - 1) / BLOCK_BITS);
+            this.hashes = Math.max(1, Math.min(16, (int) Math.round(bitsPerKey * Math.log(2))));
+            this.words = new long[blocks * BLOCK_WORDS];
+        }
+
+        /**
+         * @return true if some bit of the hash was not set yet
+         */
+        private boolean add(long hash) {
+            int block = block(hash) * BLOCK_WORDS;
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            long changed = 0;
+            for (int i = 0; i < hashes; i++) {
+                int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+                int word = block + (bit >>> 6);
+                changed |= ~words[word] & 1L << bit;
+                words[word] |= 1L << bit;
+            }
+            return changed != 0;
+        }
+
+        private boolean mightContain(long hash) {
+            int block = block(hash) * BLOCK_WORDS;
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < hashes; i++) {
+                int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+                if ((words[block + (bit >>> 6)] & 1L << bit) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int block(long hash) {
+            // high bits pick the block, low bits pick bits inside it
+            return (int) (((hash >>> 32) * blocks) >>> 32);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.logart;
+
+import org.logart.node.BTreeNode;
+import org.logart.node.NodeManager;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+/**
+ * Tree keyed by primitive longs on top of the same node and page stack as {@link DefaultBPlusTree}.
+ * <p>
+ * Keys are stored as 8 byte big endian values with the sign bit flipped, so the unsigned byte order of stored keys
+ * is the signed order of longs. {@link #getLong} reads the value in place in the leaf, without boxing and
+ * without allocating a key or a value array. Writes still allocate the key, since pages may keep the key array.
+ */
+public class LongBPlusTree {
+    public static final int KEY_SIZE = Long.BYTES;
+
+    private final NodeManager nodeManager;
+    private final BPlusTree tree;
+    // per thread key buffer and reader, reads do not keep the key, so it can be reused
+    private final ThreadLocal<LongRead> reads = ThreadLocal.withInitial(LongRead::new);
+
+    public LongBPlusTree(NodeManager nodeManager) {
+        this.nodeManager = nodeManager;
+        this.tree = new DefaultBPlusTree(nodeManager);
+    }
+
+    public void load() {
+        tree.load();
+    }
+
+    /**
+     * @return value stored for the key, {@code missing} if the key is absent
+     * @throws IllegalStateException if the stored value is not 8 bytes long
+     */
+    public long getLong(long key, long missing) {
+        LongRead read = reads.get();
+        encode(key, read.key);
+        Versioned<BTreeNode> versionedRoot = nodeManager.lockVersion();
+        try {
+            BTreeNode node = nodeManager.findBelowUpperLevels(versionedRoot, read.key);
+            while (!node.isLeaf()) {
+                node = nodeManager.readNode(node.findChild(read.key));
+            }
+            return node.getLong(read.key, read) ? read.value : missing;
+        } finally {
+            nodeManager.releaseVersion(versionedRoot);
+        }
+    }
+
+    public void putLong(long key, long value) {
+        tree.put(encode(key), ByteBuffer.allocate(Long.BYTES).putLong(0, value).array());
+    }
+
+    /**
+     * @return value stored for the key, null if the key is absent
+     */
+    public byte[] get(long key) {
+        LongRead read = reads.get();
+        encode(key, read.key);
+        return tree.get(read.key);
+    }
+
+    public void put(long key, byte[] value) {
+        tree.put(encode(key), value);
+    }
+
+    public void delete(long key) {
+        tree.delete(encode(key));
+    }
+
+    /**
+     * Deletes all keys in [from, to).
+     */
+    public void deleteRange(long from, long to) {
+        tree.deleteRange(encode(from), encode(to));
+    }
+
+    public void close() {
+        tree.close();
+    }
+
+    public static byte[] encode(long key) {
+        byte[] encoded = new byte[KEY_SIZE];
+        encode(key, encoded);
+        return encoded;
+    }
+
+    public static long decode(byte[] key) {
+        long value = 0;
+        for (int i = 0; i < KEY_SIZE; i++) {
+            value = value << 8 | (key[i] & 0xFF);
+        }
+        return value ^ Long.MIN_VALUE;
+    }
+
+    private static void encode(long key, byte[] target) {
+        long flipped = key ^ Long.MIN_VALUE;
+        for (int i = KEY_SIZE - 1; i >= 0; i--) {
+            target[i] = (byte) flipped;
+            flipped >>>= 8;
+        }
+    }
+
+    /**
+     * Keeps the value read in the leaf, so it is handed over without boxing.
+     */
+    private static final class LongRead implements LongConsumer {
+        private final byte[] key = new byte[KEY_SIZE];
+        private long value;
+
+        @Override
+        public void accept(long value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.logart;
+
+import org.logart.node.BTreeNode;
+import org.logart.node.NodeManager;
+import org.logart.tree.MultiGetHandler;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Consistent view of the tree pinned at one version.
+ * All reads see the same version and the version is locked only once, so pages of this version
+ * are not freed until the snapshot is closed.
+ * <p>
+ * A snapshot is not bound to the thread which opened it, but it is not thread safe either.
+ * If the tree is configured with reader lease limits, a snapshot held for too long or blocking too many retired pages
+ * is revoked and every following access throws {@link SnapshotExpiredException}.
+ */
+public class Snapshot implements AutoCloseable {
+    private static final Comparator<byte[]> COMPARATOR = Arrays::compareUnsigned;
+
+    private final NodeManager nodeManager;
+    private final MultiGetHandler multiGetHandler;
+    private final VersionedRefCounter.Lease<BTreeNode> lease;
+    private final Versioned<BTreeNode> versionedRoot;
+    private boolean closed;
+
+    Snapshot(NodeManager nodeManager, MultiGetHandler multiGetHandler) {
+        this.nodeManager = nodeManager;
+        this.multiGetHandler = multiGetHandler;
+        this.lease = nodeManager.openLease();
+        this.versionedRoot = lease.versioned();
+    }
+
+    public long version() {
+        return versionedRoot.version();
+    }
+
+    public byte[] get(byte[] key) {
+        ensureOpen();
+        byte[] value;
+        try {
+            BTreeNode node = nodeManager.findBelowUpperLevels(versionedRoot, key);
+            while (!node.isLeaf()) {
+                node = nodeManager.readNode(node.findChild(key));
+            }
+            value = node.get(key);
+        } catch (RuntimeException e) {
+            // pages of a revoked snapshot could be freed in the middle of the read
+            ensureValid(e);
+            throw e;
+        }
+        ensureValid(null);
+        return value;
+    }
+
+    /**
+     * Returns the value without copying it out of the page.
+     * The view stays valid until the snapshot is closed; if the snapshot is revoked its pages can be reused,
+     * so a view read after {@link SnapshotExpiredException} was thrown may show other data.
+     *
+     * @return read-only view of the value, null if the key is missing
+     */
+    public ByteBuffer getView(byte[] key) {
+        ensureOpen();
+        ByteBuffer value;
+        try {
+            BTreeNode node = nodeManager.findBelowUpperLevels(versionedRoot, key);
+            while (!node.isLeaf()) {
+                node = nodeManager.readNode(node.findChild(key));
+            }
+            value = node.getView(key);
+        } catch (RuntimeException e) {
+            ensureValid(e);
+            throw e;
+        }
+        ensureValid(null);
+        return value;
+    }
+
+    /**
+     * @return values in the order of the given keys, null for missing keys
+     */
+    public List<byte[]> multiGet(List<byte[]> keys) {
+        ensureOpen();
+        List<byte[]> values;
+        try {
+            values = multiGetHandler.multiGet(versionedRoot.get(), keys);
+        } catch (RuntimeException e) {
+            ensureValid(e);
+            throw e;
+        }
+        ensureValid(null);
+        return values;
+    }
+
+    /**
+     * Visits all entries with keys in [from, to) in key order.
+     *
+     * @param to upper bound, null to scan till the end of the tree
+     */
+    public void scan(byte[] from, byte[] to, BiConsumer<byte[], byte[]> consumer) {
+        ensureOpen();
+        try {
+            scan(versionedRoot.get(), from, to, consumer);
+        } catch (SnapshotExpiredException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            ensureValid(e);
+            throw e;
+        }
+    }
+
+    private void scan(BTreeNode node, byte[] from, byte[] to, BiConsumer<byte[], byte[]> consumer) {
+        if (node.isLeaf()) {
+            for (int i = 0; i < node.numKeys(); i++) {
+                byte[][] entry = node.get(i);
+                if (COMPARATOR.compare(entry[0], from) < 0) {
+                    continue;
+                }
+                if (to != null && COMPARATOR.compare(entry[0], to) >= 0) {
+                    return;
+                }
+                // the entry has to be read from a live page before it is handed out
+                ensureValid(null);
+                consumer.accept(entry[0], entry[1]);
+            }
+            return;
+        }
+        int numKeys = node.numKeys();
+        // child i holds keys in [key(i - 1), key(i))
+        int first = 0;
+        while (first < numKeys && COMPARATOR.compare(node.get(first)[0], from) <= 0) {
+            first++;
+        }
+        for (int i = first; i <= numKeys; i++) {
+            if (i > 0 && to != null && COMPARATOR.compare(node.get(i - 1)[0], to) >= 0) {
+                return;
+            }
+            scan(nodeManager.readNode(node.child(i)), from, to, consumer);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Snapshot of version " + versionedRoot.version() + " is closed");
+        }
+        long maxAgeNanos = nodeManager.refCounter().maxLeaseAgeNanos();
+        if (maxAgeNanos > 0 && openForNanos() > maxAgeNanos) {
+            throw new SnapshotExpiredException("Snapshot of version " + versionedRoot.version() + " opened by " + lease.holder()
+                    + " expired, it is open for " + openForNanos() / 1_000_000 + " ms, max snapshot age is " + maxAgeNanos / 1_000_000 + " ms");
+        }
+        ensureValid(null);
+    }
+
+    private void ensureValid(Throwable cause) {
+        if (!lease.isValid()) {
+            throw new SnapshotExpiredException("Snapshot of version " + versionedRoot.version() + " opened by " + lease.holder()
+                    + " was revoked after " + openForNanos() / 1_000_000 + " ms, it held back reclaiming of retired pages", cause);
+        }
+    }
+
+    private long openForNanos() {
+        return System.nanoTime() - lease.pinnedAtNanos();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        nodeManager.releaseLease(lease);
+    }
+}
@@ -0,0 +1,16 @@
+package org.logart;
+
+/**
+ * Thrown on access to a snapshot whose lease was revoked, pages of its version could already be reused.
+ */
+public class SnapshotExpiredException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    public SnapshotExpiredException(String message) {
+        super(message);
+    }
+
+    public SnapshotExpiredException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,112 @@
+package org.logart;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of values of hot keys in front of {@link DefaultBPlusTree#get(byte[])}.
+ * <p>
+ * Entries live in a set associative table, a key can take one of {@link #WAYS} slots of its set.
+ * A new key replaces the least frequent entry of a full set only if it was read more often, frequencies are
+ * estimated by a {@link FrequencySketch}, so one-off reads do not evict hot keys.
+ * <p>
+ * Writes do not touch entries, a write stamps the stripe of its key, see {@link WriteStamps}.
+ */
+public class ValueCache {
+    static final int WAYS = 4;
+
+    private final Entry[] entries;
+    private final int setMask;
+    private final FrequencySketch frequencies;
+    private final WriteStamps stamps = new WriteStamps();
+
+    /**
+     * @param maxEntries max number of cached values, rounded up to a power of two
+     */
+    public ValueCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache needs at least one entry, got " + maxEntries);
+        }
+        int sets = Integer.highestOneBit(((maxEntries + WAYS - 1) / WAYS) * 2 - 1);
+        this.entries = new Entry[sets * WAYS];
+        this.setMask = sets - 1;
+        this.frequencies = new FrequencySketch(entries.length);
+    }
+
+    /**
+     * @return cached value, a copy so callers can't change the cached one, null if the key is not cached
+     */
+    public byte[] get(byte[] key) {
+        long hash = KeyFilter.hash(key);
+        frequencies.record(hash);
+        int set = set(hash);
+        for (int way = 0; way < WAYS; way++) {
+            Entry entry = entries[set + way];
+            if (entry != null && entry.hash == hash && Arrays.equals(entry.key, key)) {
+                return isValid(entry) ? entry.value.clone() : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return epoch to cache a value read after this call with
+     */
+    long epoch() {
+        return stamps.epoch();
+    }
+
+    /**
+     * Caches the value read from a version locked after the given epoch was taken, if the key is frequent enough.
+     */
+    void offer(byte[] key, byte[] value, long epoch) {
+        long hash = KeyFilter.hash(key);
+        Entry entry = new Entry(hash, key.clone(), value.clone(), epoch);
+        if (!isValid(entry)) {
+            // written while it was read
+            return;
+        }
+        int set = set(hash);
+        int victim = -1;
+        int victimFrequency = Integer.MAX_VALUE;
+        for (int way = 0; way < WAYS; way++) {
+            Entry current = entries[set + way];
+            if (current == null || (current.hash == hash && Arrays.equals(current.key, key)) || !isValid(current)) {
+                entries[set + way] = entry;
+                return;
+            }
+            int frequency = frequencies.frequency(current.hash);
+            if (frequency < victimFrequency) {
+                victim = set + way;
+                victimFrequency = frequency;
+            }
+        }
+        if (frequencies.frequency(hash) > victimFrequency) {
+            entries[victim] = entry;
+        }
+    }
+
+    /**
+     * Called by the writer before a write of the key is published.
+     */
+    void invalidate(byte[] key) {
+        stamps.stamp(KeyFilter.hash(key), stamps.advance());
+    }
+
+    /**
+     * Called by the writer before a write of unknown keys, a range delete, is published.
+     */
+    void invalidateAll() {
+        stamps.stampAll(stamps.advance());
+    }
+
+    private boolean isValid(Entry entry) {
+        return stamps.isValid(entry.hash, entry.epoch);
+    }
+
+    private int set(long hash) {
+        return ((int) hash & setMask) * WAYS;
+    }
+
+    private record Entry(long hash, byte[] key, byte[] value, long epoch) {
+    }
+}
@@ -1,19 +1,48 @@
 package org.logart;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
+/**
+ * Epoch based version tracking.
+ * Every reader thread has its own slot where it announces the version it reads,
+ * so locking a version is a write to a thread owned field and a re-read of the current version.
+ * Reclaimer takes the minimum of announced versions, which is O(threads) and does not depend on the number of versions.
+ * <p>
+ * A version has to be released by the same thread which locked it.
+ * Long living readers like snapshots use {@link Lease} instead, a lease is not bound to a thread
+ * and could be revoked if it is held too long or blocks too many retired pages.
+ */
 public class VersionedRefCounter<T> {
+    private static final long IDLE = Long.MAX_VALUE;
+
     private final AtomicLong nextVersion = new AtomicLong(0);
-    private final ConcurrentSkipListMap<Long, AtomicInteger> refCounts = new ConcurrentSkipListMap<>();
+    // all versions before this one are not reachable by any reader, it only grows
+    private final AtomicLong reclaimBound = new AtomicLong(0);
+    private final List<ReaderSlot> slots = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ReaderSlot> readerSlot = ThreadLocal.withInitial(this::registerSlot);
+    private final List<Lease<T>> leases = new CopyOnWriteArrayList<>();
+    private final AtomicLong revokedLeases = new AtomicLong(0);
 
     private final AtomicReference<Versioned<T>> currentVersionRef;
+    // 0 means leases could be held forever
+    private final long maxLeaseAgeNanos;
 
     public VersionedRefCounter(Supplier<T> starter) {
+        this(starter, 0);
+    }
+
+    /**
+     * @param maxLeaseAgeNanos lease held longer than this is revoked, 0 for no limit
+     */
+    public VersionedRefCounter(Supplier<T> starter, long maxLeaseAgeNanos) {
+        this.maxLeaseAgeNanos = maxLeaseAgeNanos;
         this.currentVersionRef = new AtomicReference<>(new Versioned<>(starter.get(), nextVersion.getAndIncrement()));
     }
 
@@ -27,7 +56,7 @@ public class VersionedRefCounter<T> {
     public synchronized void load(T root, long version) {
         this.currentVersionRef.set(new Versioned<>(root, version));
         this.nextVersion.set(version + 1);
-        refCounts.clear();
+        this.reclaimBound.set(version);
     }
 
     public boolean advanceVersion(Versioned<T> current, T next) {
@@ -35,81 +64,254 @@ public class VersionedRefCounter<T> {
     }
 
     public Versioned<T> lockVersion() {
+        ReaderSlot slot = readerSlot.get();
+        if (slot.depth > 0) {
+            // announced version is not newer than the current one, so it protects the current version too
+            slot.depth++;
+            return currentVersionRef.get();
+        }
         while (true) {
             // read the current version
             Versioned<T> currentVersion = currentVersionRef.get();
-            // lock current version to prevent it's deletion
-            incrementRef(currentVersion.version());
-            // reread the current version to ensure it is still the same
-            Versioned<T> newVersion = currentVersionRef.get();
-
-            if (currentVersion == newVersion) {
-                // success
+            // announce current version to prevent it's deletion
+            slot.version = currentVersion.version();
+            // reread the current version to ensure reclaimer did not miss the announcement
+            if (currentVersionRef.get() == currentVersion) {
+                slot.pinnedAtNanos = System.nanoTime();
+                slot.depth = 1;
                 return currentVersion;
-            } else {
-                // another thread has changed the version, decrement ref count and retry
-                releaseVersion(currentVersion);
             }
         }
     }
 
-    // Increment ref count for a version (if it exists)
-    private void incrementRef(long version) {
-        AtomicInteger counter = refCounts.computeIfAbsent(version, unused -> new AtomicInteger(0));
-        counter.incrementAndGet();
+    /**
+     * Pins the current version for a long living reader, it could be released by any thread.
+     */
+    public Lease<T> openLease() {
+        Lease<T> lease = new Lease<>(Thread.currentThread().getName());
+        leases.add(lease);
+        while (true) {
+            Versioned<T> currentVersion = currentVersionRef.get();
+            lease.version = currentVersion.version();
+            // same as for thread slots, reread to ensure reclaimer did not miss the announcement
+            if (currentVersionRef.get() == currentVersion) {
+                lease.versioned = currentVersion;
+                return lease;
+            }
+        }
+    }
+
+    public void releaseLease(Lease<T> lease) {
+        lease.version = IDLE;
+        leases.remove(lease);
     }
 
+    public long maxLeaseAgeNanos() {
+        return maxLeaseAgeNanos;
+    }
+
+    /**
+     * @return number of versions still locked by the current thread
+     */
     public int releaseVersion(Versioned<T> versionedRoot) {
-        AtomicInteger counter = refCounts.get(versionedRoot.version());
-        if (counter != null) {
-            return counter.decrementAndGet();
+        ReaderSlot slot = readerSlot.get();
+        if (slot.depth == 0) {
+            throw new IllegalStateException("Version " + versionedRoot.version()
+                    + " is not locked by thread " + Thread.currentThread().getName());
         }
-        return 0;
+        slot.depth--;
+        if (slot.depth == 0) {
+            slot.version = IDLE;
+        }
+        return slot.depth;
     }
 
-    // Get current ref count
-    public int getRefCount(long version) {
-        AtomicInteger counter = refCounts.get(version);
-        return counter != null ? counter.get() : 0;
+    public boolean isCurrent(Versioned<T> versioned) {
+        return currentVersionRef.get() == versioned;
     }
 
-    public boolean safeToCleanUp(long version) {
-        // it's safe to clean up all versions except current,
-        // we read from nextVersion with getAndIncrement
-        // which means if the current version is 5,
-        // nextVersion will be 6
-        return version < nextVersion.get() - 1;
+    /**
+     * Nodes replaced after the given version could be freed only when no reader holds this or any older version.
+     */
+    public boolean isReclaimable(long version) {
+        if (version < reclaimBound.get()) {
+            return true;
+        }
+        return version < currentVersionRef.get().version()
+                && version < reclaimableBefore();
     }
 
-    public long cleanUpTo(long version) {
-        return floorUsedVersion(version);
+    /**
+     * Scans reader slots and moves the reclaim bound forward.
+     *
+     * @return version before which nothing is reachable by readers
+     */
+    public long reclaimableBefore() {
+        // the current version has to be read before announcements,
+        // a reader announcing after the scan will see a newer version and retry
+        long bound = currentVersionRef.get().version();
+        List<ReaderSlot> dead = null;
+        for (ReaderSlot slot : slots) {
+            Thread owner = slot.owner.get();
+            if (owner == null || !owner.isAlive()) {
+                // thread is gone, it could not read anything anymore
+                if (dead == null) {
+                    dead = new ArrayList<>();
+                }
+                dead.add(slot);
+                continue;
+            }
+            long announced = slot.version;
+            if (announced < bound) {
+                bound = announced;
+            }
+        }
+        if (dead != null) {
+            slots.removeAll(dead);
+        }
+        long now = maxLeaseAgeNanos > 0 ? System.nanoTime() : 0;
+        for (Lease<T> lease : leases) {
+            long announced = lease.version;
+            if (announced >= bound || lease.revoked) {
+                continue;
+            }
+            if (maxLeaseAgeNanos > 0 && now - lease.pinnedAtNanos > maxLeaseAgeNanos) {
+                // revoked lease does not protect anything, its holder validates reads against the flag
+                lease.revoked = true;
+                revokedLeases.incrementAndGet();
+                continue;
+            }
+            bound = announced;
+        }
+        return reclaimBound.accumulateAndGet(bound, Math::max);
     }
 
-    private long floorUsedVersion(long version) {
-        Map.Entry<Long, AtomicInteger> prev = null;
-        for (Map.Entry<Long, AtomicInteger> current : refCounts.entrySet()) {
-            // the current version is smaller or equal to the version we want to clean up
-            boolean proceed = current.getKey() <= version
-                    // the current version is not in use
-                    && current.getValue().get() <= 0;
-            if (proceed) {
-                prev = current;
+    /**
+     * Revokes the oldest lease holding an outdated version, so pages retired after it could be freed.
+     * Thread slots are not revoked, they are held only for a single operation.
+     *
+     * @return the revoked reader, empty if no lease holds an outdated version
+     */
+    public Optional<PinnedReader> revokeOldestLease() {
+        long current = currentVersionRef.get().version();
+        Lease<T> oldest = null;
+        for (Lease<T> lease : leases) {
+            if (lease.version < current && !lease.revoked && (oldest == null || lease.version < oldest.version)) {
+                oldest = lease;
             }
         }
-        return keyOrNone(prev);
+        if (oldest == null) {
+            return Optional.empty();
+        }
+        PinnedReader reader = new PinnedReader(oldest.version, oldest.holder, ageMs(oldest.pinnedAtNanos));
+        oldest.revoked = true;
+        revokedLeases.incrementAndGet();
+        return Optional.of(reader);
     }
 
-    private long keyOrNone(Map.Entry<Long, AtomicInteger> versionEntry) {
-        if (versionEntry == null) {
-            return -1; // No versions available
+    /**
+     * @return number of leases revoked so far, for holding a version too long or blocking too many retired pages
+     */
+    public long revokedLeaseCount() {
+        return revokedLeases.get();
+    }
+
+    /**
+     * @return reader holding the oldest outdated version, it is the one preventing retired pages from being freed
+     */
+    public Optional<PinnedReader> oldestReader() {
+        long current = currentVersionRef.get().version();
+        PinnedReader oldest = null;
+        for (ReaderSlot slot : slots) {
+            long announced = slot.version;
+            Thread owner = slot.owner.get();
+            if (announced < current && owner != null && (oldest == null || announced < oldest.version())) {
+                oldest = new PinnedReader(announced, owner.getName(), ageMs(slot.pinnedAtNanos));
+            }
+        }
+        for (Lease<T> lease : leases) {
+            long announced = lease.version;
+            if (announced < current && !lease.revoked && (oldest == null || announced < oldest.version())) {
+                oldest = new PinnedReader(announced, lease.holder, ageMs(lease.pinnedAtNanos));
+            }
         }
-        return versionEntry.getKey();
+        return Optional.ofNullable(oldest);
+    }
+
+    private static long ageMs(long pinnedAtNanos) {
+        return (System.nanoTime() - pinnedAtNanos) / 1_000_000;
+    }
+
+    private ReaderSlot registerSlot() {
+        ReaderSlot slot = new ReaderSlot(Thread.currentThread());
+        slots.add(slot);
+        return slot;
     }
 
     @Override
     public String toString() {
         return "VersionedRefCounter{" +
-                "refCounts=" + refCounts.entrySet().stream().filter(v -> v.getValue().get() != 0).toList() +
+                "current=" + currentVersionRef.get().version() +
+                ", reclaimBound=" + reclaimBound.get() +
+                ", readers=" + slots.stream().filter(s -> s.version != IDLE).map(s -> s.version).toList() +
+                ", leases=" + leases.stream().map(l -> l.version).toList() +
+                ", oldestReader=" + oldestReader().map(PinnedReader::toString).orElse("none") +
+                ", revokedLeases=" + revokedLeases.get() +
                 '}';
     }
+
+    /**
+     * Reader holding an outdated version.
+     *
+     * @param version     version held by the reader
+     * @param holder      name of the thread which locked the version
+     * @param pinnedForMs how long the version is held
+     */
+    public record PinnedReader(long version, String holder, long pinnedForMs) {
+    }
+
+    /**
+     * Version pinned by a long living reader.
+     * Pages read from a lease are valid only if {@link #isValid()} returned true after the read.
+     */
+    public static final class Lease<T> {
+        private final String holder;
+        private final long pinnedAtNanos = System.nanoTime();
+        private volatile long version = IDLE;
+        private volatile boolean revoked;
+        private Versioned<T> versioned;
+
+        private Lease(String holder) {
+            this.holder = holder;
+        }
+
+        public Versioned<T> versioned() {
+            return versioned;
+        }
+
+        public boolean isValid() {
+            return !revoked;
+        }
+
+        public String holder() {
+            return holder;
+        }
+
+        public long pinnedAtNanos() {
+            return pinnedAtNanos;
+        }
+    }
+
+    private static final class ReaderSlot {
+        private final WeakReference<Thread> owner;
+        // the oldest version held by the owner, IDLE if nothing is held
+        private volatile long version = IDLE;
+        // only accessed by the owner thread
+        private int depth;
+        private volatile long pinnedAtNanos;
+
+        private ReaderSlot(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+    }
 }
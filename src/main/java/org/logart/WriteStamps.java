@@ -0,0 +1,53 @@
+package org.logart;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Write epochs used to validate cached reads without touching the cached entries on writes.
+ * <p>
+ * A writer takes the next epoch and stamps the stripes of what it changes with it before the version with the write
+ * is published. A reader takes the current epoch before it locks a version and keeps it with what it caches,
+ * the cached entry is valid only while its epoch is newer than the stamp of its stripe. Writers are serialized,
+ * so only the latest writer could be unpublished when a reader takes the epoch, and its stamp equals that epoch.
+ */
+final class WriteStamps {
+    private static final int STRIPES = 1 << 12;
+
+    private final AtomicLong writeEpoch = new AtomicLong(1);
+    private final AtomicLongArray stripeStamps = new AtomicLongArray(STRIPES);
+    private volatile long allStamp;
+
+    /**
+     * @return epoch to keep with what is read after this call
+     */
+    long epoch() {
+        return writeEpoch.get();
+    }
+
+    /**
+     * @return epoch of a new write, called by the writer before it stamps what it changes
+     */
+    long advance() {
+        return writeEpoch.incrementAndGet();
+    }
+
+    void stamp(long hash, long epoch) {
+        stripeStamps.set(stripe(hash), epoch);
+    }
+
+    /**
+     * Invalidates everything read before the write with the given epoch.
+     */
+    void stampAll(long epoch) {
+        allStamp = epoch;
+    }
+
+    boolean isValid(long hash, long epoch) {
+        return epoch > stripeStamps.get(stripe(hash)) && epoch > allStamp;
+    }
+
+    private static int stripe(long hash) {
+        return (int) (hash >>> 40) & (STRIPES - 1);
+    }
+}
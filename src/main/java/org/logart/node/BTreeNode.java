@@ -2,6 +2,9 @@ package org.logart.node;
 
 import org.logart.page.Page;
 
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
 public interface BTreeNode {
     long id();
 
@@ -9,22 +12,63 @@ public interface BTreeNode {
 
     byte[] get(byte[] key);
 
+    /**
+     * @return read-only view of the value inside the page, null if the key is missing
+     */
+    ByteBuffer getView(byte[] key);
+
+    /**
+     * @return false if the key is missing, otherwise the 8 byte value is handed to the consumer as a long
+     */
+    boolean getLong(byte[] key, LongConsumer consumer);
+
     byte[][] get(int idx);
 
+    /**
+     * @return index of the entry with the key, negative if the key is missing
+     */
+    int indexOf(byte[] key);
+
     boolean isAlmostFull(long capacity);
 
+    /**
+     * @return true if a copy of this node can't take an entry of the given size, so it has to be split
+     */
+    boolean needsSplit(long capacity);
+
+    /**
+     * @return true if the key is greater than every key of this node
+     */
+    boolean isAppend(byte[] key);
+
+    boolean isUnderfull();
+
     void copyChildren(BTreeNode node, int startIdx, int endIdx);
 
+    /**
+     * Copies leaf entries [startIdx, endIdx) of the given node into this empty leaf.
+     */
+    void copyEntries(BTreeNode node, int startIdx, int endIdx);
+
     void addChildren(byte[] key, long leftPageId, long rightPageId);
 
     void replaceChild(long childId, long newId);
 
     long findChild(byte[] key);
 
+    long child(int idx);
+
     int numKeys();
 
     boolean isLeaf();
 
+    /**
+     * @return true if every child of this internal node is known to be a leaf, they can be retired without reading them
+     */
+    boolean hasLeafChildren();
+
+    void setLeafChildren(boolean leafChildren);
+
     void copy(BTreeNode node);
 
     Page page();
@@ -1,10 +1,11 @@
 package org.logart.node;
 
 import org.logart.page.Page;
-import org.logart.page.memory.InMemoryPage;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.function.LongConsumer;
 
 public class DefaultBTreeNode implements BTreeNode {
     private static final Comparator<byte[]> COMPARATOR = Arrays::compareUnsigned;
@@ -29,17 +30,47 @@ public class DefaultBTreeNode implements BTreeNode {
         return page.get(key);
     }
 
+    @Override
+    public ByteBuffer getView(byte[] key) {
+        return page.getView(key);
+    }
+
+    @Override
+    public boolean getLong(byte[] key, LongConsumer consumer) {
+        return page.getLong(key, consumer);
+    }
+
     @Override
     public byte[][] get(int idx) {
         return page.getEntry(idx);
     }
 
+    @Override
+    public int indexOf(byte[] key) {
+        return page.indexOf(key);
+    }
+
     @Override
     public boolean isAlmostFull(long capacity) {
         // we can cache this value, but again for speed and simplicity it does not matter for in-memory implementation
         return page.isAlmostFull(capacity);
     }
 
+    @Override
+    public boolean needsSplit(long capacity) {
+        return page.needsSplit(capacity);
+    }
+
+    @Override
+    public boolean isAppend(byte[] key) {
+        return page.isAppend(key);
+    }
+
+    @Override
+    public boolean isUnderfull() {
+        return page.isUnderfull();
+    }
+
     @Override
     public void copyChildren(BTreeNode node, int startIdx, int endIdx) {
         if (node.isLeaf()) {
@@ -48,6 +79,14 @@ public class DefaultBTreeNode implements BTreeNode {
         page.copyChildren(node.page(), startIdx, endIdx);
     }
 
+    @Override
+    public void copyEntries(BTreeNode node, int startIdx, int endIdx) {
+        if (!node.isLeaf()) {
+            throw new UnsupportedOperationException("Cannot copy entries from an internal node, use copyChildren.");
+        }
+        page.copyEntries(node.page(), startIdx, endIdx);
+    }
+
     @Override
     public void addChildren(byte[] key, long leftPageId, long rightPageId) {
         page.addChild(key, leftPageId, rightPageId);
@@ -66,6 +105,14 @@ public class DefaultBTreeNode implements BTreeNode {
         return page.getChild(key);
     }
 
+    @Override
+    public long child(int idx) {
+        if (isLeaf()) {
+            throw new UnsupportedOperationException("Leaf nodes do not have children.");
+        }
+        return page.getChild(idx);
+    }
+
 
     @Override
     public int numKeys() {
@@ -77,6 +124,16 @@ public class DefaultBTreeNode implements BTreeNode {
         return page.isLeaf();
     }
 
+    @Override
+    public boolean hasLeafChildren() {
+        return page.hasLeafChildren();
+    }
+
+    @Override
+    public void setLeafChildren(boolean leafChildren) {
+        page.setLeafChildren(leafChildren);
+    }
+
     @Override
     public void copy(BTreeNode node) {
         page.copy(node.page());
@@ -88,6 +145,11 @@ public class DefaultBTreeNode implements BTreeNode {
     }
 
     public long[] children() {
-        return ((InMemoryPage) page).children();
+        // internal node always has one more child than keys
+        long[] children = new long[numKeys() + 1];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = page.getChild(i);
+        }
+        return children;
     }
 }
@@ -5,22 +5,51 @@ import org.logart.VersionedRefCounter;
 import org.logart.page.Page;
 import org.logart.page.PageManager;
 
-import java.util.NoSuchElementException;
-import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DefaultNodeManager implements NodeManager {
     private final PageManager pageManager;
     private final VersionedRefCounter<BTreeNode> versionRefCounter;
 
     private final ConcurrentMap<Long, BTreeNode> nodes = new ConcurrentHashMap<>();
-    private final ConcurrentSkipListSet<PageAndVersion> freeCandidates = new ConcurrentSkipListSet<>();
+    private final NodeCache nodeCache = new NodeCache(1 << 16);
+    private final AtomicLong discardedNodes = new AtomicLong(0);
+    private final PageReclaimer reclaimer;
+    private final int decodedLevels;
+    private volatile UpperLevels upperLevels;
 
     public DefaultNodeManager(PageManager pageManager) {
+        this(pageManager, false);
+    }
+
+    /**
+     * @param backgroundReclaim free retired pages on a dedicated thread instead of the writer thread
+     */
+    public DefaultNodeManager(PageManager pageManager, boolean backgroundReclaim) {
+        this(pageManager, backgroundReclaim, ReaderLeaseLimits.NONE);
+    }
+
+    /**
+     * @param leaseLimits limits after which snapshots of slow readers are revoked, so retired pages could be freed
+     */
+    public DefaultNodeManager(PageManager pageManager, boolean backgroundReclaim, ReaderLeaseLimits leaseLimits) {
+        this(pageManager, backgroundReclaim, leaseLimits, 0);
+    }
+
+    /**
+     * @param decodedLevels number of top internal levels of the current version kept decoded on heap, 0 to read every level from pages
+     */
+    public DefaultNodeManager(PageManager pageManager, boolean backgroundReclaim, ReaderLeaseLimits leaseLimits, int decodedLevels) {
+        if (decodedLevels < 0) {
+            throw new IllegalArgumentException("Number of decoded levels can't be negative, got " + decodedLevels);
+        }
+        this.decodedLevels = decodedLevels;
         this.pageManager = pageManager;
-        this.versionRefCounter = new VersionedRefCounter<>(this::allocateLeafNode); // start with an empty node
+        this.versionRefCounter = new VersionedRefCounter<>(this::allocateLeafNode, leaseLimits.maxSnapshotAge().toNanos()); // start with an empty node
+        this.reclaimer = new PageReclaimer(pageManager, versionRefCounter, this::release,
+                backgroundReclaim, leaseLimits.maxRetiredPages());
     }
 
     @Override
@@ -28,6 +57,7 @@ public class DefaultNodeManager implements NodeManager {
         DefaultBTreeNode root = new DefaultBTreeNode(pageManager.open());
         // todo load version too?
         versionRefCounter.load(root, 0L);
+        decodeUpperLevels(null);
     }
 
     @Override
@@ -49,18 +79,34 @@ public class DefaultNodeManager implements NodeManager {
         }
         BTreeNode result = new DefaultBTreeNode(page);
         nodes.put(result.id(), result);
+        nodeCache.put(result);
         return result;
     }
 
     @Override
     public BTreeNode readNode(long nodeId) {
-        // todo read from nodes
-        Page page = pageManager.readPage(nodeId);
-        if (page == null) { // the page is deleted and could not be read
-            return null;
+        // pages are immutable once published, so a node read once could be reused until it is freed
+        BTreeNode cached = nodeCache.get(nodeId);
+        if (cached != null) {
+            return cached;
+        }
+        BTreeNode readNode = nodes.get(nodeId);
+        if (readNode == null) {
+            Page page = pageManager.readPage(nodeId);
+            if (page == null) { // the page is deleted and could not be read
+                return null;
+            }
+            readNode = new DefaultBTreeNode(page);
+            BTreeNode existing = nodes.putIfAbsent(nodeId, readNode);
+            if (existing != null) {
+                readNode = existing;
+            }
+        }
+        nodeCache.put(readNode);
+        if (nodes.get(nodeId) != readNode) {
+            // the node was freed in the meantime, it must not stay reachable through the cache
+            nodeCache.invalidate(readNode);
         }
-        BTreeNode readNode = new DefaultBTreeNode(page);
-        nodes.put(nodeId, readNode);
         return readNode;
     }
 
@@ -71,37 +117,40 @@ public class DefaultNodeManager implements NodeManager {
 
     @Override
     public void freeNode(long nodeId, long version) {
-        if (versionRefCounter.getRefCount(version) > 0) {
-            //postpone cleanup, a version in use
-            //cleanup will be done after a version is released
-            freeCandidates.add(new PageAndVersion(nodeId, version));
-            return;
-        }
-        if (nodes.remove(nodeId) != null) {
+        freeNodes(new long[]{nodeId}, 1, version);
+    }
+
+    @Override
+    public void freeNodes(long[] nodeIds, int count, long version) {
+        reclaimer.retire(nodeIds, count, version);
+    }
+
+    @Override
+    public long reclaimBacklog() {
+        return reclaimer.backlogSize();
+    }
+
+    @Override
+    public void discardNode(long nodeId) {
+        if (release(nodeId)) {
             pageManager.freePage(nodeId);
+            discardedNodes.incrementAndGet();
         }
     }
 
-    private void removePotentiallyFreedNodes(long version) {
-        boolean proceed = true;
-        while (proceed) {
-            PageAndVersion first;
-            try {
-                first = freeCandidates.first();
-            } catch (NoSuchElementException e) {
-//                this is crazy I need to do it
-                // no candidates to remove
-                return;
-            }
-            // no items
-            proceed = first != null
-                    // this version could be in use still
-                    && first.version() <= version;
-            if (proceed) {
-                freeCandidates.remove(first);
-                freeNode(first.nodeId(), first.version());
-            }
+    // guards against double free, only the one who removed the node frees its page
+    private boolean release(long nodeId) {
+        BTreeNode removed = nodes.remove(nodeId);
+        if (removed == null) {
+            return false;
         }
+        nodeCache.invalidate(removed);
+        return true;
+    }
+
+    @Override
+    public long discardedNodeCount() {
+        return discardedNodes.get();
     }
 
     @Override
@@ -109,11 +158,45 @@ public class DefaultNodeManager implements NodeManager {
         boolean versionMovedOn = versionRefCounter.advanceVersion(currentVersionedRoot, newRoot);
 
         if (versionMovedOn) {
-            cleanUp(currentVersionedRoot);
+            decodeUpperLevels(currentVersionedRoot);
+            reclaimer.onAdvance();
         }
         return versionMovedOn;
     }
 
+    @Override
+    public BTreeNode findBelowUpperLevels(Versioned<BTreeNode> versionedRoot, byte[] key) {
+        UpperLevels levels = upperLevels;
+        if (levels == null || !levels.isOf(versionedRoot)) {
+            return versionedRoot.get();
+        }
+        return readNode(levels.findBelow(key));
+    }
+
+    /**
+     * Decodes the upper levels of the current version, nodes of pages the last write did not replace are reused.
+     *
+     * @param replaced version the current one replaced, null if there is none
+     */
+    private void decodeUpperLevels(Versioned<BTreeNode> replaced) {
+        if (decodedLevels == 0) {
+            return;
+        }
+        UpperLevels previous = upperLevels;
+        Versioned<BTreeNode> current = lockVersion();
+        try {
+            // pages of the replaced version are retired only after this, so ids of its build still name the same pages
+            upperLevels = UpperLevels.build(current, decodedLevels,
+                    previous != null && replaced != null && previous.isOf(replaced) ? previous : null, this::readNode);
+        } finally {
+            releaseVersion(current);
+        }
+    }
+
+    UpperLevels upperLevels() {
+        return upperLevels;
+    }
+
     @Override
     public Versioned<BTreeNode> lockVersion() {
         return versionRefCounter.lockVersion();
@@ -121,55 +204,44 @@ public class DefaultNodeManager implements NodeManager {
 
     @Override
     public void releaseVersion(Versioned<BTreeNode> versionedRoot) {
-        int current = versionRefCounter.releaseVersion(versionedRoot);
-        if (current == 0 && versionRefCounter.safeToCleanUp(versionedRoot.version())) {
-            cleanUp(versionedRoot);
+        int stillLocked = versionRefCounter.releaseVersion(versionedRoot);
+        // only a reader of an outdated version could be the one holding retired nodes
+        if (stillLocked == 0 && !versionRefCounter.isCurrent(versionedRoot)) {
+            reclaimer.onRelease(versionedRoot.version());
         }
     }
 
-    private void cleanUp(Versioned<BTreeNode> currentVersionedRoot) {
-        long greatestUnusedVersion = versionRefCounter.cleanUpTo(currentVersionedRoot.version());
-        if (greatestUnusedVersion >= 0) {
-            removePotentiallyFreedNodes(greatestUnusedVersion);
+    @Override
+    public VersionedRefCounter.Lease<BTreeNode> openLease() {
+        return versionRefCounter.openLease();
+    }
+
+    @Override
+    public void releaseLease(VersionedRefCounter.Lease<BTreeNode> lease) {
+        versionRefCounter.releaseLease(lease);
+        if (!versionRefCounter.isCurrent(lease.versioned())) {
+            reclaimer.onRelease(lease.versioned().version());
         }
     }
 
     @Override
     public void close() {
-        Versioned<BTreeNode> root = versionRefCounter.lockVersion();
         try {
-            pageManager.writeRoot(root.get());
+            // a failure of the background reclaimer is thrown here, the root is still written
+            reclaimer.close();
         } finally {
-            versionRefCounter.releaseVersion(root);
+            Versioned<BTreeNode> root = versionRefCounter.lockVersion();
+            try {
+                pageManager.writeRoot(root.get());
+            } finally {
+                versionRefCounter.releaseVersion(root);
+            }
+            pageManager.close();
         }
-        pageManager.close();
     }
 
     @Override
     public VersionedRefCounter<BTreeNode> refCounter() {
         return versionRefCounter;
     }
-
-    private record PageAndVersion(long nodeId,
-                                  long version) implements Comparable<PageAndVersion> {
-        @Override
-        public int compareTo(PageAndVersion o) {
-            int versionCompare = Long.compare(this.version, o.version);
-            return versionCompare == 0
-                    ? Long.compare(this.nodeId, o.nodeId)
-                    : versionCompare;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (o == null || getClass() != o.getClass()) return false;
-            PageAndVersion that = (PageAndVersion) o;
-            return nodeId == that.nodeId && version == that.version;
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(nodeId, version);
-        }
-    }
 }
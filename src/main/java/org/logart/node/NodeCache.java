@@ -0,0 +1,39 @@
+package org.logart.node;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Direct mapped cache of nodes by page id, it lets the read path find a node without boxing the id.
+ * Page ids are dense since freed pages are reused, so collisions are rare for trees smaller than the cache.
+ * <p>
+ * The cache is only a shortcut, a miss falls back to the node map which stays the source of truth.
+ */
+class NodeCache {
+    private final AtomicReferenceArray<BTreeNode> slots;
+    private final int mask;
+
+    NodeCache(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity has to be a power of two, but was " + capacity);
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    BTreeNode get(long nodeId) {
+        BTreeNode node = slots.get(index(nodeId));
+        return node != null && node.id() == nodeId ? node : null;
+    }
+
+    void put(BTreeNode node) {
+        slots.set(index(node.id()), node);
+    }
+
+    void invalidate(BTreeNode node) {
+        slots.compareAndSet(index(node.id()), node, null);
+    }
+
+    private int index(long nodeId) {
+        return (int) (nodeId & mask);
+    }
+}
@@ -16,12 +16,45 @@ public interface NodeManager {
 
     void freeNode(long nodeId, long version);
 
+    /**
+     * Retires the first count nodes of the array, replaced after the given version,
+     * their pages are freed in a batch once no reader could reach them.
+     */
+    void freeNodes(long[] nodeIds, int count, long version);
+
+    /**
+     * @return number of retired nodes waiting for readers to release older versions
+     */
+    long reclaimBacklog();
+
+    /**
+     * Frees a node which was allocated but never published in any version,
+     * so no reader could reach it and there is no need to wait for a version release.
+     */
+    void discardNode(long nodeId);
+
+    long discardedNodeCount();
+
     boolean advanceVersion(Versioned<BTreeNode> currentVersionedRoot, BTreeNode newRoot);
 
     Versioned<BTreeNode> lockVersion();
 
+    /**
+     * Skips the top levels of the locked version if they are kept decoded.
+     *
+     * @return node on the path of the key right below the decoded levels, the root if they are not decoded
+     */
+    BTreeNode findBelowUpperLevels(Versioned<BTreeNode> versionedRoot, byte[] key);
+
     void releaseVersion(Versioned<BTreeNode> versionedRoot);
 
+    /**
+     * Pins the current version for a long living reader, unlike {@link #lockVersion()} it is not bound to a thread.
+     */
+    VersionedRefCounter.Lease<BTreeNode> openLease();
+
+    void releaseLease(VersionedRefCounter.Lease<BTreeNode> lease);
+
     void close();
 
     VersionedRefCounter<BTreeNode> refCounter();
@@ -0,0 +1,263 @@
+package org.logart.node;
+
+import org.logart.VersionedRefCounter;
+import org.logart.page.PageManager;
+
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongPredicate;
+
+/**
+ * Holds pages retired by writers until no reader could reach them and frees them in sorted batches.
+ * <p>
+ * In background mode a dedicated daemon thread drains retired pages, so writers only enqueue them
+ * and don't pay for page flushes. Otherwise pages are drained on the caller thread.
+ * A failure of the background thread is kept and thrown by the next {@link #reclaim()} or {@link #close()}.
+ */
+public class PageReclaimer implements AutoCloseable {
+    // the thread also wakes up by itself in case a reader released its version without a signal
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final PageManager pageManager;
+    private final VersionedRefCounter<?> refCounter;
+    // decides whether the page is still owned by the caller and has to be freed, guards against double free
+    private final LongPredicate release;
+    // 0 means retired pages could wait for readers forever
+    private final long maxBacklog;
+    private final ConcurrentSkipListSet<PageAndVersion> retired = new ConcurrentSkipListSet<>();
+    // sorted batches already dropped from the bookkeeping whose free failed, the next reclaim frees them first
+    private final ConcurrentLinkedQueue<long[]> failedBatches = new ConcurrentLinkedQueue<>();
+    private final AtomicLong backlog = new AtomicLong(0);
+    private final AtomicLong reclaimed = new AtomicLong(0);
+    // first failure of the background thread not reported yet, later ones are suppressed by it
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private final Thread worker;
+    private volatile boolean running;
+
+    public PageReclaimer(PageManager pageManager, VersionedRefCounter<?> refCounter, LongPredicate release, boolean background) {
+        this(pageManager, refCounter, release, background, 0);
+    }
+
+    /**
+     * @param maxBacklog when more retired pages wait for readers, the oldest lease is revoked, 0 for no limit
+     */
+    public PageReclaimer(PageManager pageManager, VersionedRefCounter<?> refCounter, LongPredicate release, boolean background, long maxBacklog) {
+        this.pageManager = pageManager;
+        this.refCounter = refCounter;
+        this.release = release;
+        this.maxBacklog = maxBacklog;
+        if (background) {
+            this.running = true;
+            this.worker = new Thread(this::run, "page-reclaimer");
+            this.worker.setDaemon(true);
+            this.worker.start();
+        } else {
+            this.worker = null;
+        }
+    }
+
+    /**
+     * Retires the first count pages of the array, replaced after the given version,
+     * they are freed once no reader holds this or any older version.
+     */
+    public void retire(long[] pageIds, int count, long version) {
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (retired.add(new PageAndVersion(pageIds[i], version))) {
+                backlog.incrementAndGet();
+            }
+        }
+        signal();
+    }
+
+    /**
+     * Called when a reader released the given version, only a reader of an outdated version could hold retired pages.
+     */
+    public void onRelease(long version) {
+        if (retired.ceiling(new PageAndVersion(Long.MIN_VALUE, version)) != null) {
+            signal();
+        }
+    }
+
+    /**
+     * Called when a new version is published, readers of the current version could be the last ones holding retired pages.
+     */
+    public void onAdvance() {
+        if (!retired.isEmpty() || !failedBatches.isEmpty()) {
+            signal();
+        }
+    }
+
+    /**
+     * Frees every retired page which is not reachable by readers anymore.
+     *
+     * @return number of freed pages
+     * @throws RuntimeException the failure of the background thread since the last call, if any
+     */
+    public int reclaim() {
+        throwFailure();
+        return drain();
+    }
+
+    private int drain() {
+        int freed = freeReclaimable();
+        while (maxBacklog > 0 && backlog.get() > maxBacklog) {
+            // revocations are counted by the ref counter, see VersionedRefCounter.revokedLeaseCount
+            if (refCounter.revokeOldestLease().isEmpty()) {
+                break;
+            }
+            freed += freeReclaimable();
+        }
+        return freed;
+    }
+
+    private int freeReclaimable() {
+        int retried = freeFailedBatches();
+        if (retired.isEmpty()) {
+            return retried;
+        }
+        long reclaimableBefore = refCounter.reclaimableBefore();
+        NavigableSet<PageAndVersion> reclaimable = retired.headSet(new PageAndVersion(Long.MIN_VALUE, reclaimableBefore), false);
+        long[] batch = new long[16];
+        int size = 0;
+        for (PageAndVersion candidate : reclaimable) {
+            // concurrent reclaim could take the same candidate, only the one who removed it frees the page
+            if (!reclaimable.remove(candidate)) {
+                continue;
+            }
+            backlog.decrementAndGet();
+            if (!release.test(candidate.pageId())) {
+                continue;
+            }
+            if (size == batch.length) {
+                batch = Arrays.copyOf(batch, size * 2);
+            }
+            batch[size++] = candidate.pageId();
+        }
+        if (size == 0) {
+            return retried;
+        }
+        long[] pageIds = Arrays.copyOf(batch, size);
+        Arrays.sort(pageIds);
+        free(pageIds);
+        return retried + size;
+    }
+
+    private int freeFailedBatches() {
+        int freed = 0;
+        for (long[] pageIds = failedBatches.poll(); pageIds != null; pageIds = failedBatches.poll()) {
+            backlog.addAndGet(-pageIds.length);
+            free(pageIds);
+            freed += pageIds.length;
+        }
+        return freed;
+    }
+
+    /**
+     * Pages of the batch are not retired and not tracked by the node manager anymore,
+     * so a batch which failed to be freed is kept for the next attempt instead of being lost.
+     */
+    private void free(long[] pageIds) {
+        try {
+            pageManager.freePages(pageIds);
+        } catch (RuntimeException e) {
+            backlog.addAndGet(pageIds.length);
+            failedBatches.add(pageIds);
+            throw e;
+        }
+        reclaimed.addAndGet(pageIds.length);
+    }
+
+    /**
+     * @return number of retired pages waiting for readers to move on
+     */
+    public long backlogSize() {
+        return backlog.get();
+    }
+
+    public long reclaimedCount() {
+        return reclaimed.get();
+    }
+
+    private void signal() {
+        if (worker == null) {
+            reclaim();
+        } else {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                // keep the reclaimer alive, the failure is thrown to the next caller of reclaim or close
+                RuntimeException first = failure.compareAndExchange(null, e);
+                if (first != null) {
+                    first.addSuppressed(e);
+                }
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    private void throwFailure() {
+        RuntimeException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the background thread and frees whatever is reclaimable at this point.
+     *
+     * @throws RuntimeException the failure of the background thread since the last {@link #reclaim()}, if any
+     */
+    @Override
+    public void close() {
+        if (worker != null) {
+            running = false;
+            LockSupport.unpark(worker);
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drain();
+        throwFailure();
+    }
+
+    private record PageAndVersion(long pageId,
+                                  long version) implements Comparable<PageAndVersion> {
+        @Override
+        public int compareTo(PageAndVersion o) {
+            int versionCompare = Long.compare(this.version, o.version);
+            return versionCompare == 0
+                    ? Long.compare(this.pageId, o.pageId)
+                    : versionCompare;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == null || getClass() != o.getClass()) return false;
+            PageAndVersion that = (PageAndVersion) o;
+            return pageId == that.pageId && version == that.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pageId, version);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.logart.node;
+
+import java.time.Duration;
+
+/**
+ * Limits protecting the file from growing while a slow reader holds an old version.
+ *
+ * @param maxSnapshotAge  lease of a reader holding a version longer than this is revoked, zero for no limit
+ * @param maxRetiredPages when more retired pages wait for readers, the oldest reader lease is revoked, zero for no limit
+ */
+public record ReaderLeaseLimits(Duration maxSnapshotAge, long maxRetiredPages) {
+    public static final ReaderLeaseLimits NONE = new ReaderLeaseLimits(Duration.ZERO, 0);
+}
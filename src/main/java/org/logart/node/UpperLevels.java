@@ -0,0 +1,158 @@
+package org.logart.node;
+
+import org.logart.Versioned;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/**
+ * Top internal levels of one version decoded into heap arrays, so descents do not read and decode
+ * the pages every operation goes through.
+ * <p>
+ * Separator keys of a node are kept back to back in one arena with their end offsets next to it, child ids
+ * in a {@code long[]}. A new version is built by walking the previous build alongside the new root, published
+ * pages never change, so a child whose id is the one the previous build has for the same key range is reused
+ * along with everything decoded below it, only the pages a write replaced are decoded again. Pages of the previous
+ * version are not freed before the new one is built, so an id found in both builds is the same page.
+ */
+final class UpperLevels {
+    private final Versioned<BTreeNode> root;
+    private final DecodedNode top;
+    private final int decodedCount;
+
+    private UpperLevels(Versioned<BTreeNode> root, DecodedNode top, int decodedCount) {
+        this.root = root;
+        this.top = top;
+        this.decodedCount = decodedCount;
+    }
+
+    /**
+     * Decodes the given number of internal levels of the locked version, reusing nodes of the previous build.
+     *
+     * @param previous build of the version the locked one replaced, null if there is none
+     */
+    static UpperLevels build(Versioned<BTreeNode> root, int levels, UpperLevels previous, LongFunction<BTreeNode> readNode) {
+        int[] decodedCount = new int[1];
+        BTreeNode rootNode = root.get();
+        DecodedNode top = rootNode.isLeaf()
+                ? null
+                : decode(rootNode, levels - 1, previous != null ? previous.top : null, decodedCount, readNode);
+        return new UpperLevels(root, top, decodedCount[0]);
+    }
+
+    /**
+     * @param replaced decoded node of the previous build over the same key range, null if there is none
+     */
+    private static DecodedNode decode(BTreeNode node, int levelsBelow, DecodedNode replaced, int[] decodedCount,
+                                      LongFunction<BTreeNode> readNode) {
+        int numKeys = node.numKeys();
+        int[] keyEnds = new int[numKeys];
+        byte[][] keys = new byte[numKeys][];
+        int arenaSize = 0;
+        for (int i = 0; i < numKeys; i++) {
+            keys[i] = node.get(i)[0];
+            arenaSize += keys[i].length;
+            keyEnds[i] = arenaSize;
+        }
+        byte[] arena = new byte[arenaSize];
+        for (int i = 0; i < numKeys; i++) {
+            System.arraycopy(keys[i], 0, arena, keyEnds[i] - keys[i].length, keys[i].length);
+        }
+        long[] children = new long[numKeys + 1];
+        DecodedNode[] decodedChildren = levelsBelow > 0 ? new DecodedNode[numKeys + 1] : null;
+        // children of the replaced node are only known if it had decoded levels below it
+        boolean matchable = replaced != null && replaced.decodedChildren != null;
+        for (int i = 0; i <= numKeys; i++) {
+            children[i] = node.child(i);
+            if (decodedChildren == null || children[i] == -1) {
+                continue;
+            }
+            // child of the replaced node which held the lowest key of this child
+            int j = matchable ? (i == 0 ? 0 : replaced.childIndex(keys[i - 1])) : -1;
+            DecodedNode previousChild = j >= 0 ? replaced.decodedChildren[j] : null;
+            if (j >= 0 && replaced.children[j] == children[i]
+                    && (previousChild == null || previousChild.levelsBelow == levelsBelow - 1)) {
+                // unchanged page, so is everything below it, null for a leaf
+                decodedChildren[i] = previousChild;
+                continue;
+            }
+            BTreeNode child = readNode.apply(children[i]);
+            if (!child.isLeaf()) {
+                decodedChildren[i] = decode(child, levelsBelow - 1, previousChild, decodedCount, readNode);
+            }
+        }
+        decodedCount[0]++;
+        return new DecodedNode(levelsBelow, arena, keyEnds, children, decodedChildren);
+    }
+
+    /**
+     * @return true if these levels were decoded from the given version
+     */
+    boolean isOf(Versioned<BTreeNode> versionedRoot) {
+        return root == versionedRoot;
+    }
+
+    /**
+     * @return id of the node on the path of the key right below the decoded levels, the root id if the root is a leaf
+     */
+    long findBelow(byte[] key) {
+        DecodedNode node = top;
+        if (node == null) {
+            return root.get().id();
+        }
+        while (true) {
+            int idx = node.childIndex(key);
+            DecodedNode child = node.decodedChildren != null ? node.decodedChildren[idx] : null;
+            if (child == null) {
+                return node.children[idx];
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * @return number of nodes decoded by this build, nodes reused from the previous build are not counted
+     */
+    int decodedCount() {
+        return decodedCount;
+    }
+
+    private static final class DecodedNode {
+        // number of decoded levels below this node
+        private final int levelsBelow;
+        private final byte[] arena;
+        // key i is arena[keyEnds[i - 1], keyEnds[i])
+        private final int[] keyEnds;
+        private final long[] children;
+        // null at the last decoded level, null entries are leaves
+        private final DecodedNode[] decodedChildren;
+
+        private DecodedNode(int levelsBelow, byte[] arena, int[] keyEnds, long[] children, DecodedNode[] decodedChildren) {
+            this.levelsBelow = levelsBelow;
+            this.arena = arena;
+            this.keyEnds = keyEnds;
+            this.children = children;
+            this.decodedChildren = decodedChildren;
+        }
+
+        /**
+         * Same rule as internal pages, child i holds keys in [key(i - 1), key(i)), a key equal to a separator goes right.
+         *
+         * @return index of the child, the number of separators not greater than the key
+         */
+        private int childIndex(byte[] key) {
+            int l = 0;
+            int r = keyEnds.length;
+            while (l < r) {
+                int mid = (l + r) >>> 1;
+                int start = mid == 0 ? 0 : keyEnds[mid - 1];
+                if (Arrays.compareUnsigned(arena, start, keyEnds[mid], key, 0, key.length) <= 0) {
+                    l = mid + 1;
+                } else {
+                    r = mid;
+                }
+            }
+            return l;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.logart.page;
 
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
 public interface Page {
 
     long pageId();
@@ -10,25 +13,73 @@ public interface Page {
 
     byte[] get(byte[] key);
 
+    /**
+     * @return read-only view of the value without copying it, null if the key is missing.
+     * The view shares memory with the page, so it is valid only as long as the page is not freed.
+     */
+    ByteBuffer getView(byte[] key);
+
+    /**
+     * Hands an 8 byte value to the consumer as a big endian long, read in place.
+     *
+     * @return false if the key is missing, the consumer is not called then
+     * @throws IllegalStateException if the value is not 8 bytes long
+     */
+    boolean getLong(byte[] key, LongConsumer consumer);
+
     boolean isLeaf();
 
     byte[][] getEntry(byte[] key);
 
     byte[][] getEntry(int idx);
 
+    /**
+     * @return index of the entry with the key, negative if the key is missing
+     */
+    int indexOf(byte[] key);
+
     boolean isAlmostFull(long capacity);
 
+    /**
+     * @return true if a copy of this page can't take an entry of the given size either
+     */
+    boolean needsSplit(long capacity);
+
+    /**
+     * @return true if the key is greater than every key of this page, so inserting it appends
+     */
+    boolean isAppend(byte[] key);
+
+    boolean isUnderfull();
+
     boolean isDeleted();
 
     void markDeleted();
 
     long getChild(byte[] key);
 
+    long getChild(int idx);
+
     boolean addChild(byte[] key, long left, long right);
 
+    /**
+     * @return true if the page is internal and every child is known to be a leaf, false if unknown
+     */
+    boolean hasLeafChildren();
+
+    /**
+     * Records whether every child of this internal page is a leaf.
+     */
+    void setLeafChildren(boolean leafChildren);
+
     void copy(Page page);
 
     void copyChildren(Page page, int startIdx, int endIdx);
 
+    /**
+     * Copies entries [startIdx, endIdx) of the given page into this empty page in bulk, keys stay sorted.
+     */
+    void copyEntries(Page page, int startIdx, int endIdx);
+
     void replaceChild(long childId, long newId);
 }
@@ -17,5 +17,10 @@ public interface PageManager {
 
     void freePage(long pageId);
 
+    /**
+     * Frees a batch of pages, ids are expected to be sorted.
+     */
+    void freePages(long[] pageIds);
+
     void close();
 }
@@ -5,6 +5,7 @@ import org.logart.page.Page;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.function.LongConsumer;
 
 public class InMemoryPage implements Page {
     // keep page size small for memory testing,
@@ -20,6 +21,7 @@ public class InMemoryPage implements Page {
 
     private int numKeys = 0;
     private boolean deleted;
+    private boolean leafChildren;
 
     public InMemoryPage(long id, boolean leaf) {
         this.id = id;
@@ -69,6 +71,32 @@ public class InMemoryPage implements Page {
         return null;
     }
 
+    @Override
+    public ByteBuffer getView(byte[] key) {
+        // stored arrays are never modified in place, wrapping them is enough
+        byte[] value = get(key);
+        return value != null
+                ? ByteBuffer.wrap(value).asReadOnlyBuffer()
+                : null;
+    }
+
+    @Override
+    public boolean getLong(byte[] key, LongConsumer consumer) {
+        byte[] value = get(key);
+        if (value == null) {
+            return false;
+        }
+        if (value.length != Long.BYTES) {
+            throw new IllegalStateException("Value of " + value.length + " bytes is not a long");
+        }
+        long decoded = 0;
+        for (byte b : value) {
+            decoded = decoded << 8 | (b & 0xFF);
+        }
+        consumer.accept(decoded);
+        return true;
+    }
+
     @Override
     public boolean isLeaf() {
         return leaf;
@@ -84,11 +112,32 @@ public class InMemoryPage implements Page {
         return (idx < numKeys) ? new byte[][]{keys[idx], values[idx]} : null;
     }
 
+    @Override
+    public int indexOf(byte[] key) {
+        int idx = searchKeyIdx(key);
+        return idx < numKeys && Arrays.equals(keys[idx], key) ? idx : -idx - 1;
+    }
+
     @Override
     public boolean isAlmostFull(long capacity) {
         return numKeys == PAGE_SIZE - 1;
     }
 
+    @Override
+    public boolean needsSplit(long capacity) {
+        return isAlmostFull(capacity);
+    }
+
+    @Override
+    public boolean isAppend(byte[] key) {
+        return numKeys > 0 && COMPARATOR.compare(keys[numKeys - 1], key) < 0;
+    }
+
+    @Override
+    public boolean isUnderfull() {
+        return numKeys < PAGE_SIZE / 2;
+    }
+
     @Override
     public boolean isDeleted() {
         return deleted;
@@ -108,6 +157,11 @@ public class InMemoryPage implements Page {
         return children[idx];
     }
 
+    @Override
+    public long getChild(int idx) {
+        return children[idx];
+    }
+
     @Override
     public boolean addChild(byte[] key, long leftPageId, long rightPageId) {
         int idx = searchKeyIdx(key);
@@ -120,12 +174,26 @@ public class InMemoryPage implements Page {
         return true;
     }
 
+    @Override
+    public boolean hasLeafChildren() {
+        return leafChildren;
+    }
+
+    @Override
+    public void setLeafChildren(boolean leafChildren) {
+        if (leaf) {
+            throw new UnsupportedOperationException("Leaf pages do not have children.");
+        }
+        this.leafChildren = leafChildren;
+    }
+
     @Override
     public void copy(Page page) {
         if (!(page instanceof InMemoryPage memPage)) {
             throw new IllegalArgumentException("Can only copy from InMemoryPage.");
         }
         this.numKeys = memPage.numKeys;
+        this.leafChildren = memPage.leafChildren;
         this.keys = Arrays.copyOf(memPage.keys, PAGE_SIZE);
         this.values = Arrays.copyOf(memPage.values, PAGE_SIZE);
         this.children = Arrays.copyOf(memPage.children, PAGE_SIZE + 1);
@@ -140,11 +208,22 @@ public class InMemoryPage implements Page {
         this.children = new long[PAGE_SIZE + 1];
         Arrays.fill(this.children, -1);
         this.numKeys = endIdx - startIdx;
+        this.leafChildren = memPage.leafChildren;
 
         System.arraycopy(memPage.keys, startIdx, keys, 0, endIdx - startIdx);
         System.arraycopy(memPage.children, startIdx, children, 0, endIdx - startIdx + 1);
     }
 
+    @Override
+    public void copyEntries(Page page, int startIdx, int endIdx) {
+        if (!(page instanceof InMemoryPage memPage)) {
+            throw new IllegalArgumentException("Can only copy from InMemoryPage.");
+        }
+        this.numKeys = endIdx - startIdx;
+        System.arraycopy(memPage.keys, startIdx, keys, 0, endIdx - startIdx);
+        System.arraycopy(memPage.values, startIdx, values, 0, endIdx - startIdx);
+    }
+
     @Override
     public void replaceChild(long childId, long newId) {
         for (int i = 0; i < children.length; i++) {
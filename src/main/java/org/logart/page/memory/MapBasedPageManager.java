@@ -61,6 +61,13 @@ public class MapBasedPageManager implements PageManager {
         }
     }
 
+    @Override
+    public void freePages(long[] pageIds) {
+        for (long pageId : pageIds) {
+            freePage(pageId);
+        }
+    }
+
     @Override
     public void close() {
 
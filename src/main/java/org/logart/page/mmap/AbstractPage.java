@@ -2,12 +2,17 @@ package org.logart.page.mmap;
 
 import org.logart.page.Page;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Comparator;
 
+import static org.logart.page.mmap.PageFactory.COMPACT_FLAG;
+import static org.logart.page.mmap.PageFactory.FIXED_SIZE_FLAG;
 import static org.logart.page.mmap.PageFactory.IS_DELETED;
+import static org.logart.page.mmap.PageFactory.LAYOUT_FLAGS;
 import static org.logart.page.mmap.PageFactory.LEAF_FLAG;
 
 /**
@@ -16,12 +21,19 @@ import static org.logart.page.mmap.PageFactory.LEAF_FLAG;
  * Page Type	    1 bit	Leaf or internal
  * Full flag	    1 bit	Indicates if the page is full
  * Is deleted 	    1 bit	Indicates if the page is deleted
- * Padding 	    5 bits	Reserved for future use
- * Padding              7 bytes padding to align to 8 bytes
+ * Fingerprints 	    1 bit	Leaf keeps a 1 byte fingerprint per slot after the slot table
+ * Key prefixes 	    1 bit	Leaf slots keep first 4 bytes of the key next to the payload pointer
+ * Fixed size 	    1 bit	Leaf packs fixed size entries without slots, see {@link FixedLeafPage}
+ * Eytzinger 	    1 bit	Internal page keeps separator prefixes in Eytzinger order after the slot table
+ * Compact 	    1 bit	Format v2, key and value lengths are varints, internal pages keep 4 byte child ids
+ * Padding              7 bytes padding to align to 8 bytes, fixed size leaves keep key and value sizes here,
+ *                      internal pages whether all children are leaves (byte 1),
+ *                      Eytzinger internal pages the length of the prefix shared by all separators
  * Page ID	            8 bytes	This page's ID
  * Number of entries	2 bytes	Slot count
  * Free space offset	2 bytes	Start of free space
- * Padding              4 bytes padding to align to 8 bytes
+ * Fragmented space     2 bytes Dead payload bytes left by updates, dropped by the next copy
+ * Padding              2 bytes padding to align to 8 bytes
  * Right sibling ptr	8 bytes	Only for leaf pages -- not yet implemented
  */
 public abstract class AbstractPage implements Page {
@@ -32,12 +44,21 @@ public abstract class AbstractPage implements Page {
     protected static final int PAGE_ID_OFFSET = 8;
     protected static final int ENTRY_COUNT_OFFSET = 16;      // after page type + page id
     public static final int FREE_SPACE_OFFSET = 18;
+    protected static final int FRAGMENTED_SPACE_OFFSET = 20;
 
     protected static final int SLOT_KEY_SIZE = 2;
 
     public static final int FULL_FLAG = 0b0100_0000;
 
+    // lengths below it take one byte in compact pages, the high bit of the first byte marks a second one
+    private static final int ONE_BYTE_LENGTH_LIMIT = 0x80;
+    private static final int NUMERIC_KEY_SIZE = Long.BYTES;
+    private static final int MAX_INTERPOLATION_PROBES = 3;
+    // reads 8 bytes of a key array as one big endian long, same order as the page buffer
+    private static final VarHandle KEY_LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
     private final ByteBuffer buffer;
+    private KeySearch keySearch = KeySearch.BINARY;
 
     public AbstractPage(ByteBuffer buffer) {
         this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
@@ -61,38 +82,198 @@ public abstract class AbstractPage implements Page {
         buffer.putShort(FREE_SPACE_OFFSET, (short) offset);
     }
 
+    protected int getFragmentedSpace() {
+        return Short.toUnsignedInt(buffer.getShort(FRAGMENTED_SPACE_OFFSET));
+    }
+
+    protected void addFragmentedSpace(int bytes) {
+        buffer.putShort(FRAGMENTED_SPACE_OFFSET, (short) (getFragmentedSpace() + bytes));
+    }
+
     @Override
     public byte[][] getEntry(byte[] key) {
-        PageLoc pageLoc = searchKeyIdx(key);
-        if (pageLoc.idx() == -1 || pageLoc.k() == null) {
-            return null;
+        int slot = findSlot(key);
+        return slot >= 0 ? getEntry(slot) : null;
+    }
+
+    @Override
+    public int indexOf(byte[] key) {
+        return findSlot(key);
+    }
+
+    /**
+     * Searches the slot directory with the {@link KeySearch} of this page, probed keys are compared in place
+     * and never copied out of the buffer.
+     *
+     * @return index of the key if found, otherwise {@code -(insertion point) - 1}
+     */
+    protected int findSlot(byte[] key) {
+        if (keySearch == KeySearch.INTERPOLATION) {
+            return interpolationSearch(key);
         }
-        return new byte[][]{pageLoc.k(), pageLoc.v()};
+        return binarySearch(key, 0, getEntryCount() - 1);
     }
 
-    protected PageLoc searchKeyIdx(byte[] key) {
-        int l = 0;
-        int r = getEntryCount();
-        int idx = -1;
-        int compare = 0;
-        while (l < r) {
-            idx = (l + r) / 2;
-            byte[][] entry = getEntry(idx);
-            compare = COMPARATOR.compare(key, entry[0]);
+    /**
+     * Binary search over slots [l, r], every slot before l holds a smaller key and every slot after r a bigger one.
+     */
+    protected int binarySearch(byte[] key, int l, int r) {
+        while (l <= r) {
+            int mid = (l + r) >>> 1;
+            int compare = compareKeyAt(mid, key);
             if (compare < 0) {
-                r = idx;
+                l = mid + 1;
             } else if (compare > 0) {
-                l = idx + 1;
+                r = mid - 1;
             } else {
-                return new PageLoc(idx, entry[0], entry[1], compare); // found
+                return mid;
             }
         }
-        if (compare > 0) {
-            idx++;
+        return -(l + 1);
+    }
+
+    /**
+     * Probes the slot the key would take if numeric keys were spread evenly between the first and the last key
+     * of the range, the range shrinks around the probe the same way as in binary search.
+     * Gives up after a few rounds or as soon as a round does not halve the range.
+     * Numeric keys never compare opposite to full keys, so the result is exact for any distribution,
+     * skewed pages only pay a few extra probes before the binary fallback.
+     */
+    private int interpolationSearch(byte[] key) {
+        int l = 0;
+        int r = getEntryCount() - 1;
+        if (r < 0) {
+            return -1;
         }
-        return new PageLoc(idx, null, null, compare);
+        long target = numericKey(key);
+        long low = numericKeyAt(l);
+        long high = numericKeyAt(r);
+        for (int probe = 0; probe < MAX_INTERPOLATION_PROBES && l <= r; probe++) {
+            if (Long.compareUnsigned(target, low) < 0) {
+                return -(l + 1);
+            }
+            if (Long.compareUnsigned(target, high) > 0) {
+                return -(r + 2);
+            }
+            if (low == high) {
+                break;
+            }
+            int pos = l + (int) (unsignedToDouble(target - low) / unsignedToDouble(high - low) * (r - l));
+            int compare = compareKeyAt(pos, key);
+            if (compare == 0) {
+                return pos;
+            }
+            int size = r - l + 1;
+            // estimates over random ids are rarely off by more than the square root of the range,
+            // a guard probe that far away bounds the range from the other side too
+            int guard = Math.max(1, (int) Math.sqrt(size));
+            if (compare < 0) {
+                l = pos + 1;
+                int guardPos = pos + guard;
+                if (guardPos <= r) {
+                    int guardCompare = compareKeyAt(guardPos, key);
+                    if (guardCompare == 0) {
+                        return guardPos;
+                    } else if (guardCompare > 0) {
+                        r = guardPos - 1;
+                    } else {
+                        l = guardPos + 1;
+                    }
+                }
+            } else {
+                r = pos - 1;
+                int guardPos = pos - guard;
+                if (guardPos >= l) {
+                    int guardCompare = compareKeyAt(guardPos, key);
+                    if (guardCompare == 0) {
+                        return guardPos;
+                    } else if (guardCompare < 0) {
+                        l = guardPos + 1;
+                    } else {
+                        r = guardPos - 1;
+                    }
+                }
+            }
+            if (r - l + 1 > size / 2) {
+                // keys are not spread evenly here, binary search does better
+                break;
+            }
+            if (l <= r) {
+                low = numericKeyAt(l);
+                high = numericKeyAt(r);
+            }
+        }
+        return binarySearch(key, l, r);
+    }
+
+    /**
+     * First {@value #NUMERIC_KEY_SIZE} bytes of the key as an unsigned big endian long, padded with zeros.
+     */
+    static long numericKey(byte[] key) {
+        long value = 0;
+        for (int i = 0; i < NUMERIC_KEY_SIZE; i++) {
+            value = value << 8 | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return value;
     }
 
+    protected long numericKeyAt(int idx) {
+        int keyOffset = Short.toUnsignedInt(buffer.getShort(keySlotOffset(idx)));
+        int keyLen = lengthAt(buffer, keyOffset);
+        int keyStart = keyOffset + lengthSize(keyLen);
+        if (keyLen >= NUMERIC_KEY_SIZE) {
+            return buffer.getLong(keyStart);
+        }
+        long value = 0;
+        for (int i = 0; i < NUMERIC_KEY_SIZE; i++) {
+            value = value << 8 | (i < keyLen ? buffer.get(keyStart + i) & 0xFF : 0);
+        }
+        return value;
+    }
+
+    private static double unsignedToDouble(long value) {
+        // the lowest bit does not matter for an estimate
+        return value >= 0 ? value : (value >>> 1) * 2.0;
+    }
+
+    /**
+     * Compares the key stored at the given slot with the given key, unsigned, same as {@link #COMPARATOR}.
+     */
+    protected int compareKeyAt(int idx, byte[] key) {
+        int keyOffset = Short.toUnsignedInt(buffer.getShort(keySlotOffset(idx)));
+        int keyLen = lengthAt(buffer, keyOffset);
+        int keyStart = keyOffset + lengthSize(keyLen);
+        int compare = compareBytes(buffer, keyStart, key, Math.min(keyLen, key.length));
+        return compare != 0 ? compare : keyLen - key.length;
+    }
+
+    /**
+     * Compares len bytes of the buffer starting at the given offset with the first len bytes of the key, unsigned.
+     * Whole 8 byte words are compared as longs, so an 8 byte key takes a single comparison.
+     */
+    protected static int compareBytes(ByteBuffer buffer, int start, byte[] key, int len) {
+        int i = 0;
+        for (; i + Long.BYTES <= len; i += Long.BYTES) {
+            long stored = buffer.getLong(start + i);
+            long given = (long) KEY_LONG.get(key, i);
+            if (stored != given) {
+                return Long.compareUnsigned(stored, given);
+            }
+        }
+        for (; i < len; i++) {
+            int compare = Byte.compareUnsigned(buffer.get(start + i), key[i]);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return offset of the 2-byte key pointer of the given slot
+     */
+    protected abstract int keySlotOffset(int idx);
+
     @Override
     public boolean isLeaf() {
         byte pageMeta = buffer.get(0);
@@ -108,6 +289,79 @@ public abstract class AbstractPage implements Page {
                 || availableSpace() < capacity + internalOverhead(); // Check if free space is less than capacity
     }
 
+    /**
+     * Fragmented space counts as free here, a copy of this page is compacted and can take the entry
+     * even if this page can't.
+     */
+    @Override
+    public boolean needsSplit(long capacity) {
+        int fragmented = getFragmentedSpace();
+        return fragmented == 0
+                ? isAlmostFull(capacity)
+                : availableSpace() + fragmented < capacity + internalOverhead();
+    }
+
+    /**
+     * Page is underfull when live payload and slots take less than a quarter of the usable space.
+     * Quarter instead of a half leaves a gap between merge and split thresholds,
+     * so redistributed pages do not bounce between the two.
+     */
+    @Override
+    public boolean isUnderfull() {
+        int slots = entrySize() * getEntryCount() + padding();
+        int payload = PAGE_SIZE - getFreeSpaceOffset() - getFragmentedSpace();
+        return slots + payload < (PAGE_SIZE - HEADER_SIZE) / 4;
+    }
+
+    @Override
+    public boolean isAppend(byte[] key) {
+        int entryCount = getEntryCount();
+        return entryCount > 0 && compareKeyAt(entryCount - 1, key) < 0;
+    }
+
+    protected boolean isFixedSize() {
+        return (buffer.get(0) & FIXED_SIZE_FLAG) == FIXED_SIZE_FLAG;
+    }
+
+    protected boolean isCompact() {
+        return (buffer.get(0) & COMPACT_FLAG) == COMPACT_FLAG;
+    }
+
+    /**
+     * @return key or value length stored at the offset of the given buffer, laid out in the format of this page
+     */
+    protected int lengthAt(ByteBuffer buffer, int offset) {
+        if (!isCompact()) {
+            return Short.toUnsignedInt(buffer.getShort(offset));
+        }
+        int first = buffer.get(offset) & 0xFF;
+        return first < ONE_BYTE_LENGTH_LIMIT
+                ? first
+                : (first & ~ONE_BYTE_LENGTH_LIMIT) << 8 | buffer.get(offset + 1) & 0xFF;
+    }
+
+    /**
+     * @return size of the field holding the given length, 2 bytes, 1 for short keys and values of compact pages
+     */
+    protected int lengthSize(int length) {
+        if (!isCompact()) {
+            return SLOT_KEY_SIZE;
+        }
+        return length < ONE_BYTE_LENGTH_LIMIT ? 1 : 2;
+    }
+
+    /**
+     * @return size of the written length field
+     */
+    protected int putLength(int offset, int length) {
+        if (isCompact() && length < ONE_BYTE_LENGTH_LIMIT) {
+            buffer.put(offset, (byte) length);
+            return 1;
+        }
+        buffer.putShort(offset, (short) (isCompact() ? length | ONE_BYTE_LENGTH_LIMIT << 8 : length));
+        return SLOT_KEY_SIZE;
+    }
+
     protected boolean isFull() {
         byte pageMeta = buffer.get(0);
         return (pageMeta & FULL_FLAG) == FULL_FLAG;
@@ -120,6 +374,55 @@ public abstract class AbstractPage implements Page {
         return freeSpaceStart - slotSize;
     }
 
+    /**
+     * Copies entries [startIdx, endIdx) of the given page of the same format into this empty page.
+     * The slot range goes over with one bulk put, each payload with one more, packed at the end of this page,
+     * so payload space left behind by updates in the source page is not carried over.
+     * Key pointers are rewritten in the same pass.
+     */
+    @Override
+    public void copyEntries(Page page, int startIdx, int endIdx) {
+        AbstractPage source = (AbstractPage) page;
+        ByteBuffer src = source.buffer();
+        int count = Math.min(endIdx, source.getEntryCount()) - startIdx;
+        buffer.put(HEADER_SIZE, src, HEADER_SIZE + entrySize() * startIdx, entrySize() * count + padding());
+        packPayloads(source, startIdx, count);
+    }
+
+    /**
+     * Empties this page and gives it the layout of the given page, used when entries of a full page
+     * do not fit the layout of this one.
+     */
+    protected void resetToLayoutOf(AbstractPage source) {
+        buffer.put(0, (byte) (buffer.get(0) & ~(FULL_FLAG | LAYOUT_FLAGS) | source.buffer().get(0) & LAYOUT_FLAGS));
+        setEntryCount(0);
+        setFreeSpaceOffset(PAGE_SIZE);
+        buffer.putShort(FRAGMENTED_SPACE_OFFSET, (short) 0);
+    }
+
+    /**
+     * Writes payloads of the given source entries at the end of this page and points key slots of this page at them.
+     */
+    protected void packPayloads(AbstractPage source, int startIdx, int count) {
+        ByteBuffer src = source.buffer();
+        int freeSpaceOffset = PAGE_SIZE;
+        for (int i = 0; i < count; i++) {
+            int srcOffset = Short.toUnsignedInt(src.getShort(source.keySlotOffset(startIdx + i)));
+            int length = source.payloadLength(src, srcOffset);
+            freeSpaceOffset -= length;
+            buffer.put(freeSpaceOffset, src, srcOffset, length);
+            buffer.putShort(keySlotOffset(i), (short) freeSpaceOffset);
+        }
+        setEntryCount(count);
+        setFreeSpaceOffset(freeSpaceOffset);
+        buffer.putShort(FRAGMENTED_SPACE_OFFSET, (short) 0);
+    }
+
+    /**
+     * @return size of the payload starting at the given offset, including its length fields
+     */
+    protected abstract int payloadLength(ByteBuffer buffer, int offset);
+
     protected abstract short entrySize();
 
     protected abstract short padding();
@@ -145,6 +448,19 @@ public abstract class AbstractPage implements Page {
     @Override
     public void copy(Page page) {
         AbstractPage internalPage = (AbstractPage) page; // Ensure we are working with the same type
+        if (internalPage.isFixedSize() != isFixedSize() || internalPage.isCompact() != isCompact()) {
+            // a file reopened with another leaf layout or page format converts its pages as they are copied
+            copyEntries(internalPage, 0, internalPage.getEntryCount());
+            return;
+        }
+        if (internalPage.getFragmentedSpace() > 0) {
+            // write live payloads only, so dead bytes of updated entries are not carried into the next version
+            byte layout = (byte) (buffer.get(0) & LAYOUT_FLAGS);
+            copyEntries(internalPage, 0, internalPage.getEntryCount());
+            // layout of the entries written is the layout of this page
+            buffer.put(0, (byte) (internalPage.buffer().get(0) & ~(FULL_FLAG | LAYOUT_FLAGS) | layout));
+            return;
+        }
         long currentId = pageId();
         internalPage.buffer().rewind();
         buffer.rewind();
@@ -152,6 +468,13 @@ public abstract class AbstractPage implements Page {
         buffer.putLong(PAGE_ID_OFFSET, currentId); // Ensure the page ID remains the same
     }
 
+    /**
+     * Sets how this page looks up keys, the setting is not stored in the page, so it is set every time a page is read.
+     */
+    void setKeySearch(KeySearch keySearch) {
+        this.keySearch = keySearch;
+    }
+
     protected ByteBuffer buffer() {
         return buffer;
     }
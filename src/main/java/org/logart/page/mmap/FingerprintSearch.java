@@ -0,0 +1,34 @@
+package org.logart.page.mmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds slots with a given fingerprint in the fingerprint array of a leaf.
+ * <p>
+ * The Vector API implementation is opt-in, it is used only when the {@value #VECTOR_SEARCH_PROPERTY} system property
+ * is set and the JVM runs with {@code --add-modules jdk.incubator.vector}, otherwise the scalar one is used.
+ */
+interface FingerprintSearch {
+    String VECTOR_SEARCH_PROPERTY = "org.logart.vectorSearch";
+
+    FingerprintSearch INSTANCE = select();
+
+    /**
+     * @return index in [from, to) of the first fingerprint equal to the given one, -1 if there is none
+     */
+    int indexOf(ByteBuffer buffer, int offset, int from, int to, byte fingerprint);
+
+    private static FingerprintSearch select() {
+        if (!Boolean.getBoolean(VECTOR_SEARCH_PROPERTY) || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarFingerprintSearch();
+        }
+        try {
+            // loaded by name, so the vector classes are never linked when the module is absent
+            return (FingerprintSearch) Class.forName("org.logart.page.mmap.VectorFingerprintSearch")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarFingerprintSearch();
+        }
+    }
+}
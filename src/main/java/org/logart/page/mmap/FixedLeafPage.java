@@ -0,0 +1,252 @@
+package org.logart.page.mmap;
+
+import org.logart.page.Page;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+import static org.logart.page.mmap.PageFactory.FIXED_SIZE_FLAG;
+import static org.logart.page.mmap.PageFactory.LEAF_FLAG;
+
+/**
+ * Leaf of a tree whose keys and values all have the same size, entries are packed in key order right after the header
+ * and searched in place, there are no slot pointers and no length fields.
+ * <p>
+ * Key and value sizes are kept in the padding after the page metadata byte, so the page can be read without
+ * knowing the tree it belongs to. Updates overwrite the value in place, so the page never has fragmented space.
+ */
+public class FixedLeafPage extends AbstractPage implements Page {
+    protected static final int KEY_SIZE_OFFSET = 2;
+    protected static final int VALUE_SIZE_OFFSET = 4;
+
+    public FixedLeafPage(ByteBuffer buffer) {
+        super(buffer);
+    }
+
+    public static Page newPage(long pageId, ByteBuffer buf, int keySize, int valueSize) {
+        /**
+         * Entries:             keySize + valueSize bytes each, sorted by key
+         * Free space:          up to the end of the page
+         */
+        buf.put(0, (byte) (LEAF_FLAG | FIXED_SIZE_FLAG));
+        buf.putShort(KEY_SIZE_OFFSET, (short) keySize);
+        buf.putShort(VALUE_SIZE_OFFSET, (short) valueSize);
+        buf.putLong(PAGE_ID_OFFSET, pageId);
+        buf.putShort(ENTRY_COUNT_OFFSET, (short) 0);
+        buf.putShort(FREE_SPACE_OFFSET, (short) PAGE_SIZE);
+        buf.putShort(FRAGMENTED_SPACE_OFFSET, (short) 0);
+        return new FixedLeafPage(buf);
+    }
+
+    public static Page readPage(ByteBuffer buffer) {
+        return new FixedLeafPage(buffer);
+    }
+
+    /**
+     * @return max number of entries of the given size a page can hold
+     */
+    public static int capacity(int keySize, int valueSize) {
+        return (PAGE_SIZE - HEADER_SIZE) / (keySize + valueSize);
+    }
+
+    public int keySize() {
+        return Short.toUnsignedInt(buffer().getShort(KEY_SIZE_OFFSET));
+    }
+
+    public int valueSize() {
+        return Short.toUnsignedInt(buffer().getShort(VALUE_SIZE_OFFSET));
+    }
+
+    @Override
+    public boolean put(byte[] key, byte[] value) {
+        int keySize = keySize();
+        int valueSize = valueSize();
+        if (key.length != keySize || value.length != valueSize) {
+            throw new IllegalArgumentException("Page holds " + keySize + " byte keys and " + valueSize
+                    + " byte values, got " + key.length + " and " + value.length);
+        }
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            buffer().put(keySlotOffset(slot) + keySize, value);
+            return true;
+        }
+        int entryCount = getEntryCount();
+        if (isFull() || availableSpace() < keySize + valueSize) {
+            buffer().put(0, (byte) (buffer().get(0) | FULL_FLAG));
+            return false;
+        }
+        int idx = -slot - 1;
+        int offset = keySlotOffset(idx);
+        // move bigger entries to the right
+        buffer().put(offset + keySize + valueSize, buffer(), offset, (entryCount - idx) * (keySize + valueSize));
+        buffer().put(offset, key);
+        buffer().put(offset + keySize, value);
+        setEntryCount(entryCount + 1);
+        return true;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        byte[] value = new byte[valueSize()];
+        buffer().get(keySlotOffset(slot) + keySize(), value);
+        return value;
+    }
+
+    @Override
+    public ByteBuffer getView(byte[] key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        return buffer().slice(keySlotOffset(slot) + keySize(), valueSize()).asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean getLong(byte[] key, LongConsumer consumer) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return false;
+        }
+        if (valueSize() != Long.BYTES) {
+            throw new IllegalStateException("Value of " + valueSize() + " bytes is not a long");
+        }
+        consumer.accept(buffer().getLong(keySlotOffset(slot) + keySize()));
+        return true;
+    }
+
+    @Override
+    public byte[][] getEntry(int index) {
+        if (index >= getEntryCount()) return null;
+        int offset = keySlotOffset(index);
+        byte[] key = new byte[keySize()];
+        buffer().get(offset, key);
+        byte[] value = new byte[valueSize()];
+        buffer().get(offset + key.length, value);
+        return new byte[][]{key, value};
+    }
+
+    @Override
+    protected int compareKeyAt(int idx, byte[] key) {
+        int keySize = keySize();
+        int compare = compareBytes(buffer(), keySlotOffset(idx), key, Math.min(keySize, key.length));
+        return compare != 0 ? compare : keySize - key.length;
+    }
+
+    @Override
+    protected long numericKeyAt(int idx) {
+        int keySize = keySize();
+        int keyStart = keySlotOffset(idx);
+        if (keySize >= Long.BYTES) {
+            return buffer().getLong(keyStart);
+        }
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = value << 8 | (i < keySize ? buffer().get(keyStart + i) & 0xFF : 0);
+        }
+        return value;
+    }
+
+    /**
+     * Entries of a page with the same sizes are copied with one bulk put, entries of other layouts one by one.
+     *
+     * @throws IllegalStateException if some entry is of another size or the entries do not fit,
+     *                               this page is left empty then
+     */
+    @Override
+    public void copyEntries(Page page, int startIdx, int endIdx) {
+        int count = Math.min(endIdx, page.getEntryCount()) - startIdx;
+        if (page instanceof FixedLeafPage source && source.keySize() == keySize() && source.valueSize() == valueSize()) {
+            buffer().put(HEADER_SIZE, source.buffer(), source.keySlotOffset(startIdx), count * entrySize());
+            setEntryCount(count);
+            return;
+        }
+        int keySize = keySize();
+        int valueSize = valueSize();
+        if (count > capacity(keySize, valueSize)) {
+            throw new IllegalStateException(count + " entries of page " + page.pageId()
+                    + " do not fit fixed size leaf " + pageId() + " of " + capacity(keySize, valueSize));
+        }
+        byte[][][] entries = new byte[count][][];
+        for (int i = 0; i < count; i++) {
+            byte[][] entry = page.getEntry(startIdx + i);
+            if (entry[0].length != keySize || entry[1].length != valueSize) {
+                throw new IllegalStateException("Page " + page.pageId() + " has an entry of " + entry[0].length
+                        + " and " + entry[1].length + " bytes, fixed size leaf " + pageId() + " holds "
+                        + keySize + " and " + valueSize);
+            }
+            entries[i] = entry;
+        }
+        setEntryCount(0);
+        for (byte[][] entry : entries) {
+            put(entry[0], entry[1]);
+        }
+    }
+
+    /**
+     * @return offset of the entry, the key starts there and the value follows it
+     */
+    @Override
+    protected int keySlotOffset(int idx) {
+        return HEADER_SIZE + entrySize() * idx;
+    }
+
+    @Override
+    protected int payloadLength(ByteBuffer buffer, int offset) {
+        return entrySize();
+    }
+
+    @Override
+    protected short entrySize() {
+        return (short) (keySize() + valueSize());
+    }
+
+    @Override
+    protected short padding() {
+        return 0;
+    }
+
+    @Override
+    protected int internalOverhead() {
+        // the entry size is all the space an entry takes
+        return 0;
+    }
+
+    @Override
+    public long getChild(byte[] key) {
+        throw new UnsupportedOperationException("Leaf pages do not have children.");
+    }
+
+    @Override
+    public long getChild(int idx) {
+        throw new UnsupportedOperationException("Leaf pages do not have children.");
+    }
+
+    @Override
+    public boolean addChild(byte[] key, long left, long right) {
+        throw new UnsupportedOperationException("Leaf pages do not have children.");
+    }
+
+    @Override
+    public boolean hasLeafChildren() {
+        return false;
+    }
+
+    @Override
+    public void setLeafChildren(boolean leafChildren) {
+        throw new UnsupportedOperationException("Leaf pages do not have children.");
+    }
+
+    @Override
+    public void copyChildren(Page page, int startIdx, int endIdx) {
+        throw new UnsupportedOperationException("Leaf pages do not have children.");
+    }
+
+    @Override
+    public void replaceChild(long childId, long newId) {
+        throw new UnsupportedOperationException("Leaf pages do not have children.");
+    }
+}
@@ -3,11 +3,24 @@ package org.logart.page.mmap;
 import org.logart.page.Page;
 
 import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+import static org.logart.page.mmap.PageFactory.COMPACT_FLAG;
+import static org.logart.page.mmap.PageFactory.EYTZINGER_FLAG;
 
 public class InternalPage extends AbstractPage implements Page {
     protected static final int SLOT_CHILD_POINTER = 8;
     protected static final int SLOT_SIZE = 2 + SLOT_CHILD_POINTER; // each slot is a 2-byte pointer to payload + 8-byte child pointer
+    // child pointers of compact pages, page ids below 2^32
+    protected static final int COMPACT_CHILD_POINTER = 4;
+    protected static final long MAX_COMPACT_CHILD_ID = 0xFFFF_FFFFL;
     public static final int PAYLOAD_SIZE_FIELD_SIZE = 2;
+    // 1 if every child is a leaf, 0 if some is not or it is not known, kept in the padding after the page metadata byte
+    protected static final int LEAF_CHILDREN_OFFSET = 1;
+    // length of the prefix all separators share, kept in the padding after the page metadata byte
+    protected static final int COMMON_PREFIX_OFFSET = 2;
+    // 4 bytes of the key after the common prefix and a 2 byte slot index
+    protected static final int EYTZINGER_ENTRY_SIZE = 4 + 2;
 
     public InternalPage(ByteBuffer buffer) {
         super(buffer);
@@ -18,15 +31,42 @@ public class InternalPage extends AbstractPage implements Page {
     }
 
     public static Page newPage(long pageId, ByteBuffer buf, boolean sanityCheckEnabled) {
+        return newPage(pageId, buf, sanityCheckEnabled, false);
+    }
+
+    /**
+     * @param eytzinger keep 4 bytes of every separator after their common prefix in a separate array in Eytzinger
+     *                  (breadth first) order, child lookups search it without branching on the comparison
+     */
+    public static Page newPage(long pageId, ByteBuffer buf, boolean sanityCheckEnabled, boolean eytzinger) {
+        return newPage(pageId, buf, sanityCheckEnabled, eytzinger, false);
+    }
+
+    /**
+     * @param compact page format v2, child pointers take 4 bytes and key lengths are varints,
+     *                every child id has to be below 2^32
+     */
+    public static Page newPage(long pageId, ByteBuffer buf, boolean sanityCheckEnabled, boolean eytzinger, boolean compact) {
         /**
-         * Slot table:          2 bytes per entry + 8 bytes per child pointer
+         * Slot table:          2 bytes per entry + 8 bytes per child pointer, 4 bytes in compact pages
+         * Eytzinger array:     6 bytes per entry, optional
          * Free space:          variable size
          * Payload:             variable size
          */
-        buf.put(0, (byte) 0); // First bit = Leaf/Internal
+        int meta = 0; // First bit = Leaf/Internal
+        if (eytzinger) {
+            meta |= EYTZINGER_FLAG;
+        }
+        if (compact) {
+            meta |= COMPACT_FLAG;
+        }
+        buf.put(0, (byte) meta);
+        buf.put(LEAF_CHILDREN_OFFSET, (byte) 0);
+        buf.putShort(COMMON_PREFIX_OFFSET, (short) 0);
         buf.putLong(PAGE_ID_OFFSET, pageId);
         buf.putShort(ENTRY_COUNT_OFFSET, (short) 0);
         buf.putShort(FREE_SPACE_OFFSET, (short) PAGE_SIZE);
+        buf.putShort(FRAGMENTED_SPACE_OFFSET, (short) 0);
         return new InternalPage(buf);
     }
 
@@ -44,16 +84,26 @@ public class InternalPage extends AbstractPage implements Page {
         throw new UnsupportedOperationException("InternalPage does not support put operation directly. Use getChild instead.");
     }
 
+    @Override
+    public ByteBuffer getView(byte[] key) {
+        throw new UnsupportedOperationException("InternalPage does not hold values. Use getChild instead.");
+    }
+
+    @Override
+    public boolean getLong(byte[] key, LongConsumer consumer) {
+        throw new UnsupportedOperationException("InternalPage does not hold values. Use getChild instead.");
+    }
+
     @Override
     public byte[][] getEntry(int index) {
         int entryCount = getEntryCount();
         if (index >= entryCount) return null;
 
-        int slotOffset = HEADER_SIZE + SLOT_CHILD_POINTER + SLOT_SIZE * index;
+        int slotOffset = keySlotOffset(index);
         int kvOffset = Short.toUnsignedInt(buffer().getShort(slotOffset));
 
-        int keyLen = Short.toUnsignedInt(buffer().getShort(kvOffset));
-        kvOffset += PAYLOAD_SIZE_FIELD_SIZE;
+        int keyLen = lengthAt(buffer(), kvOffset);
+        kvOffset += lengthSize(keyLen);
         byte[] key = new byte[keyLen];
         buffer().get(kvOffset, key);
 
@@ -62,15 +112,58 @@ public class InternalPage extends AbstractPage implements Page {
 
     @Override
     public void copyChildren(Page page, int startIdx, int endIdx) {
-        // copy the entire page, so we will have all the keys and children
-        this.copy(page);
-        InternalPage internalPage = (InternalPage) page;
-        ByteBuffer src = internalPage.buffer();
-        int offset = HEADER_SIZE + startIdx * SLOT_SIZE;
-        // add a child pointer to the end since every key have left and right, this will allow capturing a right child pointer too
-        int length = (endIdx - startIdx) * SLOT_SIZE + SLOT_CHILD_POINTER;
-        buffer().put(HEADER_SIZE, src, offset, length);
-        setEntryCount(endIdx - startIdx);
+        // slot range includes a trailing child pointer since every key has left and right, so the right child comes along
+        copyEntries(page, startIdx, endIdx);
+    }
+
+    /**
+     * Slot tables of both layouts are the same, only the Eytzinger array after them differs, it is rebuilt
+     * for the copied separators. Separators of a page of the other format are added one by one.
+     */
+    @Override
+    public void copyEntries(Page page, int startIdx, int endIdx) {
+        InternalPage source = (InternalPage) page;
+        int count = Math.min(endIdx, source.getEntryCount()) - startIdx;
+        setLeafChildren(source.hasLeafChildren());
+        if (source.isCompact() != isCompact()) {
+            if (convert(source, startIdx, count)) {
+                return;
+            }
+            // separators of a full page may not fit the other format, the copy keeps the layout of the source
+            resetToLayoutOf(source);
+        }
+        if (!hasEytzinger() && !source.hasEytzinger()) {
+            super.copyEntries(page, startIdx, endIdx);
+            return;
+        }
+        buffer().put(HEADER_SIZE, source.buffer(), source.childOffset(startIdx), slotSize() * count + padding());
+        packPayloads(source, startIdx, count);
+        if (hasEytzinger()) {
+            buildEytzinger();
+        }
+    }
+
+    /**
+     * @return false if the separators do not fit this page, the page is left with part of them
+     */
+    private boolean convert(InternalPage source, int startIdx, int count) {
+        putChild(childOffset(0), source.getChild(startIdx));
+        for (int i = startIdx; i < startIdx + count; i++) {
+            if (!addChild(source.getEntry(i)[0], source.getChild(i), source.getChild(i + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasLeafChildren() {
+        return buffer().get(LEAF_CHILDREN_OFFSET) == 1;
+    }
+
+    @Override
+    public void setLeafChildren(boolean leafChildren) {
+        buffer().put(LEAF_CHILDREN_OFFSET, (byte) (leafChildren ? 1 : 0));
     }
 
     @Override
@@ -79,7 +172,7 @@ public class InternalPage extends AbstractPage implements Page {
         for (int i = 0; i <= getEntryCount(); i++) {
             long child = getChild(i);
             if (child == childId) {
-                buffer().putLong(HEADER_SIZE + (SLOT_SIZE * i), newId);
+                putChild(childOffset(i), newId);
                 return;
             }
         }
@@ -87,26 +180,57 @@ public class InternalPage extends AbstractPage implements Page {
 
     @Override
     public long getChild(byte[] key) {
-        PageLoc pageLoc = searchKeyIdx(key);
-        if (pageLoc.idx() < getEntryCount() && pageLoc.cmp() >= 0) {
-            return getChild(pageLoc.idx() + 1);
+        // keys which are appended go to the last child, check it before the search
+        if (isAppend(key)) {
+            return getChild(getEntryCount());
+        }
+        if (hasEytzinger()) {
+            return getChild(eytzingerChildIndex(key));
         }
-        return getChild(pageLoc.idx());
+        int slot = findSlot(key);
+        // child i holds keys in [key(i - 1), key(i)), a key equal to a separator goes right
+        return slot >= 0
+                ? getChild(slot + 1)
+                : getChild(-slot - 1);
+    }
+
+    @Override
+    public long getChild(int idx) {
+        int offset = childOffset(idx);
+        return isCompact()
+                ? Integer.toUnsignedLong(buffer().getInt(offset))
+                : buffer().getLong(offset);
+    }
+
+    /**
+     * @return offset of the pointer to child idx, the first one is right after the header, every other follows
+     * the key pointer of its slot
+     */
+    protected int childOffset(int idx) {
+        return HEADER_SIZE + slotSize() * idx;
     }
 
-    private long getChild(int idx) {
-        return buffer().getLong(HEADER_SIZE + SLOT_CHILD_POINTER + (SLOT_SIZE * (idx - 1)) + SLOT_KEY_SIZE);
+    private void putChild(int offset, long childId) {
+        if (!isCompact()) {
+            buffer().putLong(offset, childId);
+            return;
+        }
+        if (childId < 0 || childId > MAX_COMPACT_CHILD_ID) {
+            throw new IllegalStateException("Page id " + childId + " does not fit a compact internal page");
+        }
+        buffer().putInt(offset, (int) childId);
     }
 
     @Override
     public boolean addChild(byte[] key, long left, long right) {
         int entryCount = getEntryCount();
-        PageLoc pageLoc = searchKeyIdx(key);
+        int slot = findSlot(key);
+        int childPointer = childPointerSize();
 
-        int slotOffset = HEADER_SIZE + SLOT_CHILD_POINTER + SLOT_SIZE * entryCount;
+        int slotOffset = keySlotOffset(entryCount);
 
         int freeSpaceOffset = getFreeSpaceOffset();
-        int payloadSize = PAYLOAD_SIZE_FIELD_SIZE + key.length;
+        int payloadSize = lengthSize(key.length) + key.length;
 
         if (availableSpace() < payloadSize + internalOverhead()) {
             // write info about page is full
@@ -119,49 +243,192 @@ public class InternalPage extends AbstractPage implements Page {
         // Write key-value to payload area
         int dataStart = freeSpaceOffset - payloadSize;
         int kvOffset = dataStart;
-        buffer().putShort(kvOffset, (short) key.length);
-        kvOffset += PAYLOAD_SIZE_FIELD_SIZE;
+        kvOffset += putLength(kvOffset, key.length);
         buffer().put(kvOffset, key);
 
         // Write slot
-        int idx = pageLoc.idx();
+        int idx = slot >= 0 ? slot : -slot - 1;
         if (idx >= 0 && idx < entryCount) {
             // move bigger entry to the right
-            int start = HEADER_SIZE + SLOT_SIZE * idx;
+            int start = childOffset(idx);
             int end = slotOffset;
-            byte[] tmp = new byte[end - start - SLOT_CHILD_POINTER];
-            buffer().get(start + SLOT_CHILD_POINTER, tmp);
+            byte[] tmp = new byte[end - start - childPointer];
+            buffer().get(start + childPointer, tmp);
 
-            buffer().putLong(start, left);
-            buffer().putShort(start + SLOT_CHILD_POINTER, (short) dataStart);
-            buffer().putLong(start + SLOT_CHILD_POINTER + SLOT_KEY_SIZE, right);
-            buffer().put(start + SLOT_SIZE + SLOT_CHILD_POINTER, tmp);
+            putChild(start, left);
+            buffer().putShort(start + childPointer, (short) dataStart);
+            putChild(start + childPointer + SLOT_KEY_SIZE, right);
+            buffer().put(start + slotSize() + childPointer, tmp);
         } else {
-            buffer().putLong(slotOffset - SLOT_CHILD_POINTER, left);
+            putChild(slotOffset - childPointer, left);
             buffer().putShort(slotOffset, (short) dataStart);
-            buffer().putLong(slotOffset + SLOT_KEY_SIZE, right);
+            putChild(slotOffset + SLOT_KEY_SIZE, right);
         }
 
         // Update header
         setFreeSpaceOffset(freeSpaceOffset - payloadSize);
         setEntryCount(entryCount + 1);
 
+        if (hasEytzinger()) {
+            // the new slot took the place of the array, pages are built once and then only read, so it is rebuilt whole
+            buildEytzinger();
+        }
         return true;
     }
 
+    /**
+     * Same rule as the binary search, child i holds keys in [key(i - 1), key(i)), a key equal to a separator goes right.
+     * The array is searched for the first separator whose 4 bytes are not smaller than those of the key,
+     * full keys are compared only when the 4 bytes are equal.
+     *
+     * @return index of the child, the number of separators not greater than the key
+     */
+    private int eytzingerChildIndex(byte[] key) {
+        int entryCount = getEntryCount();
+        if (entryCount == 0) {
+            return 0;
+        }
+        int commonPrefix = commonPrefixLength();
+        int compare = compareCommonPrefix(key, commonPrefix);
+        if (compare != 0) {
+            return compare < 0 ? 0 : entryCount;
+        }
+        int array = keySlotOffset(entryCount);
+        int target = prefix(key, commonPrefix);
+        int k = 1;
+        while (k <= entryCount) {
+            // no branch on the comparison, the next index is computed from it
+            int entry = buffer().getInt(array + (k - 1) * EYTZINGER_ENTRY_SIZE);
+            k = 2 * k + (entry < target ? 1 : 0);
+        }
+        // drop the right turns taken after the last left one, that left turn was at the lower bound
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+        if (k == 0) {
+            return entryCount;
+        }
+        int lowerBound = array + (k - 1) * EYTZINGER_ENTRY_SIZE;
+        int idx = Short.toUnsignedInt(buffer().getShort(lowerBound + 4));
+        if (buffer().getInt(lowerBound) != target) {
+            return idx;
+        }
+        // separators with the same 4 bytes start at the lower bound, the ones after them are bigger than the key,
+        // so a binary search from the lower bound compares keys in full only within the tie
+        int slot = binarySearch(key, idx, entryCount - 1);
+        return slot >= 0 ? slot + 1 : -slot - 1;
+    }
+
+    /**
+     * @return sign of the comparison of the first bytes of the key with the prefix all separators share
+     */
+    private int compareCommonPrefix(byte[] key, int commonPrefix) {
+        if (commonPrefix == 0) {
+            return 0;
+        }
+        int keyOffset = Short.toUnsignedInt(buffer().getShort(keySlotOffset(0)));
+        int keyStart = keyOffset + lengthSize(lengthAt(buffer(), keyOffset));
+        int compare = compareBytes(buffer(), keyStart, key, Math.min(commonPrefix, key.length));
+        if (compare != 0) {
+            return -compare;
+        }
+        // a key shorter than the common prefix is smaller than every separator
+        return key.length < commonPrefix ? -1 : 0;
+    }
+
+    /**
+     * Writes the Eytzinger array after the slot table, node k of the implicit tree has children 2k and 2k + 1,
+     * an in-order walk of the tree visits separators in slot order.
+     */
+    private void buildEytzinger() {
+        int entryCount = getEntryCount();
+        int commonPrefix = 0;
+        if (entryCount > 1) {
+            // separators are sorted, the prefix of the first and the last one is shared by all of them
+            byte[] first = getEntry(0)[0];
+            byte[] last = getEntry(entryCount - 1)[0];
+            int max = Math.min(Math.min(first.length, last.length), Short.MAX_VALUE);
+            while (commonPrefix < max && first[commonPrefix] == last[commonPrefix]) {
+                commonPrefix++;
+            }
+        }
+        buffer().putShort(COMMON_PREFIX_OFFSET, (short) commonPrefix);
+        int array = keySlotOffset(entryCount);
+        // in-order walk without recursion, starts at the leftmost node
+        int k = leftmost(1, entryCount);
+        for (int idx = 0; idx < entryCount; idx++) {
+            int entry = array + (k - 1) * EYTZINGER_ENTRY_SIZE;
+            buffer().putInt(entry, prefix(getEntry(idx)[0], commonPrefix));
+            buffer().putShort(entry + 4, (short) idx);
+            if (2 * k + 1 <= entryCount) {
+                k = leftmost(2 * k + 1, entryCount);
+            } else {
+                // climb while coming from a right child, then one more step to the parent
+                while ((k & 1) == 1) {
+                    k >>>= 1;
+                }
+                k >>>= 1;
+            }
+        }
+    }
+
+    private static int leftmost(int k, int entryCount) {
+        while (2 * k <= entryCount) {
+            k = 2 * k;
+        }
+        return k;
+    }
+
+    /**
+     * 4 bytes of the key after the common prefix, padded with zeros, with the sign bit flipped,
+     * so signed comparison of prefixes follows unsigned comparison of keys.
+     */
+    private static int prefix(byte[] key, int commonPrefix) {
+        int prefix = 0;
+        for (int i = commonPrefix; i < commonPrefix + 4; i++) {
+            prefix = prefix << 8 | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return prefix ^ Integer.MIN_VALUE;
+    }
+
+    protected int commonPrefixLength() {
+        return Short.toUnsignedInt(buffer().getShort(COMMON_PREFIX_OFFSET));
+    }
+
+    protected boolean hasEytzinger() {
+        return (buffer().get(0) & EYTZINGER_FLAG) == EYTZINGER_FLAG;
+    }
+
+    private int childPointerSize() {
+        return isCompact() ? COMPACT_CHILD_POINTER : SLOT_CHILD_POINTER;
+    }
+
+    private int slotSize() {
+        return SLOT_KEY_SIZE + childPointerSize();
+    }
+
+    @Override
+    protected int payloadLength(ByteBuffer buffer, int offset) {
+        int keyLen = lengthAt(buffer, offset);
+        return lengthSize(keyLen) + keyLen;
+    }
+
+    @Override
+    protected int keySlotOffset(int idx) {
+        return HEADER_SIZE + childPointerSize() + slotSize() * idx;
+    }
+
     @Override
     protected short entrySize() {
-        return SLOT_SIZE;
+        return (short) (hasEytzinger() ? slotSize() + EYTZINGER_ENTRY_SIZE : slotSize());
     }
 
     @Override
     protected short padding() {
         // shift for one child pointer
-        return SLOT_CHILD_POINTER;
+        return (short) childPointerSize();
     }
 
     @Override
     protected int internalOverhead() {
-        return SLOT_SIZE + PAYLOAD_SIZE_FIELD_SIZE;
+        return entrySize() + PAYLOAD_SIZE_FIELD_SIZE;
     }
 }
@@ -0,0 +1,17 @@
+package org.logart.page.mmap;
+
+/**
+ * How a page looks up a key in its sorted slot table.
+ */
+public enum KeySearch {
+    /**
+     * Halves the slot range on every probe, works for any key distribution.
+     */
+    BINARY,
+    /**
+     * Estimates the slot from the first 8 bytes of the key read as an unsigned big endian number,
+     * falls back to binary search when a few estimates do not hit the key. Suits trees keyed by ids or timestamps
+     * spread evenly over their range, keys sharing their first 8 bytes always take the binary path.
+     */
+    INTERPOLATION
+}
@@ -4,9 +4,15 @@ package org.logart.page.mmap;
 import org.logart.page.Page;
 
 import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+import static org.logart.page.mmap.PageFactory.COMPACT_FLAG;
+import static org.logart.page.mmap.PageFactory.FINGERPRINT_FLAG;
+import static org.logart.page.mmap.PageFactory.KEY_PREFIX_FLAG;
 
 public class LeafPage extends AbstractPage implements Page {
     protected static final int SLOT_SIZE = 2;               // each slot is a 2-byte pointer to payload
+    protected static final int PREFIX_SIZE = 4;             // optional first bytes of the key kept in the slot
     public static final int PAYLOAD_SIZE_FIELD_SIZE = 2;
 
     public LeafPage(ByteBuffer buffer) {
@@ -14,15 +20,51 @@ public class LeafPage extends AbstractPage implements Page {
     }
 
     public static Page newPage(long pageId, ByteBuffer buf) {
+        return newPage(pageId, buf, false);
+    }
+
+    /**
+     * @param fingerprints keep a 1 byte hash of every key in a separate array, point lookups scan it
+     *                     and compare full keys only on a match
+     */
+    public static Page newPage(long pageId, ByteBuffer buf, boolean fingerprints) {
+        return newPage(pageId, buf, fingerprints, false);
+    }
+
+    /**
+     * @param keyPrefixes keep the first {@link #PREFIX_SIZE} bytes of every key in its slot, so binary search
+     *                    reads the payload only when prefixes are equal
+     */
+    public static Page newPage(long pageId, ByteBuffer buf, boolean fingerprints, boolean keyPrefixes) {
+        return newPage(pageId, buf, fingerprints, keyPrefixes, false);
+    }
+
+    /**
+     * @param compact page format v2, key and value lengths are varints, one byte each for keys and values
+     *                shorter than 128 bytes
+     */
+    public static Page newPage(long pageId, ByteBuffer buf, boolean fingerprints, boolean keyPrefixes, boolean compact) {
         /**
-         * Slot table:          2 bytes per entry
+         * Slot table:          2 bytes per entry, 6 bytes with key prefixes
+         * Fingerprints:        1 byte per entry, optional
          * Free space:          variable size
          * Payload:             variable size
          */
-        buf.put(0, (byte) 0b1000_0000); // First bit = Leaf/Internal
+        int meta = 0b1000_0000; // First bit = Leaf/Internal
+        if (fingerprints) {
+            meta |= FINGERPRINT_FLAG;
+        }
+        if (keyPrefixes) {
+            meta |= KEY_PREFIX_FLAG;
+        }
+        if (compact) {
+            meta |= COMPACT_FLAG;
+        }
+        buf.put(0, (byte) meta);
         buf.putLong(PAGE_ID_OFFSET, pageId);
         buf.putShort(ENTRY_COUNT_OFFSET, (short) 0);
         buf.putShort(FREE_SPACE_OFFSET, (short) PAGE_SIZE);
+        buf.putShort(FRAGMENTED_SPACE_OFFSET, (short) 0);
         return new LeafPage(buf);
     }
 
@@ -32,14 +74,15 @@ public class LeafPage extends AbstractPage implements Page {
 
     public boolean put(byte[] key, byte[] value) {
         int entryCount = getEntryCount();
-        int slotOffset = SLOT_SIZE * entryCount + HEADER_SIZE;
+        int slotWidth = slotWidth();
+        int slotOffset = keySlotOffset(entryCount);
 
         int freeSpaceOffset = getFreeSpaceOffset();
         int payloadSize = key.length + value.length;
-        int payloadSizeWithMeta = payloadSize + PAYLOAD_SIZE_FIELD_SIZE * 2; // two size fields for key and value
+        int payloadSizeWithMeta = payloadSize + lengthSize(key.length) + lengthSize(value.length); // two size fields for key and value
 
         // we need to reserve space for slot offset too
-        if (isFull() || availableSpace() < payloadSize + internalOverhead()) {
+        if (isFull() || availableSpace() < payloadSizeWithMeta + entrySize()) {
             // write info about page is full
             byte pageMeta = buffer().get(0);
             pageMeta = (byte) (pageMeta | FULL_FLAG);
@@ -50,36 +93,43 @@ public class LeafPage extends AbstractPage implements Page {
         // Write key-value to payload area
         int dataStart = freeSpaceOffset - payloadSizeWithMeta;
         int kvOffset = dataStart;
-        buffer().putShort(kvOffset, (short) key.length);
-        kvOffset += 2;
+        kvOffset += putLength(kvOffset, key.length);
         buffer().put(kvOffset, key);
         kvOffset += key.length;
-        buffer().putShort(kvOffset, (short) value.length);
-        kvOffset += 2;
+        kvOffset += putLength(kvOffset, value.length);
         buffer().put(kvOffset, value);
 
         // Write slot
         setFreeSpaceOffset(freeSpaceOffset - payloadSizeWithMeta);
 
-        PageLoc pageLoc = searchKeyIdx(key);
-        int idx = pageLoc.idx();
-        if (pageLoc.k() != null && pageLoc.cmp() == 0) {
-            // Key already exists, update value
-            buffer().putShort(HEADER_SIZE + SLOT_SIZE * idx, (short) dataStart);
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            // Key already exists, update value, the old payload becomes dead space
+            int oldOffset = Short.toUnsignedInt(buffer().getShort(keySlotOffset(slot)));
+            addFragmentedSpace(payloadLength(buffer(), oldOffset));
+            buffer().putShort(keySlotOffset(slot), (short) dataStart);
             return true;
         }
+        int idx = -slot - 1;
+        if (hasFingerprints()) {
+            // fingerprints follow the slot table, move them past the new slot leaving a gap at idx
+            int fingerprints = slotOffset + slotWidth;
+            buffer().put(fingerprints + idx + 1, buffer(), slotOffset + idx, entryCount - idx);
+            buffer().put(fingerprints, buffer(), slotOffset, idx);
+            buffer().put(fingerprints + idx, fingerprint(key));
+        }
         if (idx >= 0 && idx < entryCount) {
             // move bigger entry to the right
-            int start = HEADER_SIZE + SLOT_SIZE * idx;
+            int start = keySlotOffset(idx);
             int end = slotOffset;
             byte[] tmp = new byte[end - start];
-            // leave two bytes for the new entry
+            // leave one slot for the new entry
             buffer().get(start, tmp);
 
-            buffer().putShort(start, (short) dataStart);
-            buffer().put(start + SLOT_SIZE, tmp);
+            writeSlot(start, dataStart, key);
+            buffer().put(start + slotWidth, tmp);
         } else {
-            buffer().putShort(slotOffset, (short) dataStart);
+            writeSlot(slotOffset, dataStart, key);
         }
 
         // Update header
@@ -89,28 +139,33 @@ public class LeafPage extends AbstractPage implements Page {
 
     @Override
     public byte[] get(byte[] key) {
-        byte[][] entry = getEntry(key);
-        return entry != null
-                ? entry[1]
-                : null;
+        int slot = lookup(key);
+        if (slot < 0) {
+            return null;
+        }
+        // only the value is copied out, the key is already known
+        int valueOffset = valueOffset(slot);
+        byte[] value = new byte[lengthAt(buffer(), valueOffset)];
+        buffer().get(valueOffset + lengthSize(value.length), value);
+        return value;
     }
 
     public byte[][] getEntry(int index) {
         int entryCount = getEntryCount();
         if (index >= entryCount) return null;
 
-        int slotOffset = HEADER_SIZE + SLOT_SIZE * index;
+        int slotOffset = keySlotOffset(index);
         int kvOffset = Short.toUnsignedInt(buffer().getShort(slotOffset));
 
-        int keyLen = Short.toUnsignedInt(buffer().getShort(kvOffset));
+        int keyLen = lengthAt(buffer(), kvOffset);
 
-        kvOffset += 2;
+        kvOffset += lengthSize(keyLen);
         byte[] key = new byte[keyLen];
         buffer().get(kvOffset, key);
         kvOffset += keyLen;
 
-        int valueLen = Short.toUnsignedInt(buffer().getShort(kvOffset));
-        kvOffset += 2;
+        int valueLen = lengthAt(buffer(), kvOffset);
+        kvOffset += lengthSize(valueLen);
         byte[] value = new byte[valueLen];
         buffer().get(kvOffset, value);
 
@@ -122,11 +177,26 @@ public class LeafPage extends AbstractPage implements Page {
         throw new UnsupportedOperationException("Leaf pages do not have children.");
     }
 
+    @Override
+    public long getChild(int idx) {
+        throw new UnsupportedOperationException("Leaf pages do not have children.");
+    }
+
     @Override
     public boolean addChild(byte[] key, long left, long right) {
         throw new UnsupportedOperationException("Leaf pages do not have children.");
     }
 
+    @Override
+    public boolean hasLeafChildren() {
+        return false;
+    }
+
+    @Override
+    public void setLeafChildren(boolean leafChildren) {
+        throw new UnsupportedOperationException("Leaf pages do not have children.");
+    }
+
     @Override
     public void copyChildren(Page page, int startIdx, int endIdx) {
         throw new UnsupportedOperationException("Leaf pages do not have children.");
@@ -137,9 +207,236 @@ public class LeafPage extends AbstractPage implements Page {
         throw new UnsupportedOperationException("Leaf pages do not have children.");
     }
 
+    @Override
+    public ByteBuffer getView(byte[] key) {
+        int slot = lookup(key);
+        if (slot < 0) {
+            return null;
+        }
+        int valueOffset = valueOffset(slot);
+        int valueLen = lengthAt(buffer(), valueOffset);
+        return buffer().slice(valueOffset + lengthSize(valueLen), valueLen).asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean getLong(byte[] key, LongConsumer consumer) {
+        int slot = lookup(key);
+        if (slot < 0) {
+            return false;
+        }
+        int valueOffset = valueOffset(slot);
+        int valueLen = lengthAt(buffer(), valueOffset);
+        if (valueLen != Long.BYTES) {
+            throw new IllegalStateException("Value of " + valueLen + " bytes is not a long");
+        }
+        consumer.accept(buffer().getLong(valueOffset + lengthSize(valueLen)));
+        return true;
+    }
+
+    /**
+     * Point lookup, with fingerprints the full key is compared only for slots with a matching fingerprint.
+     *
+     * @return index of the key, negative if it is missing
+     */
+    private int lookup(byte[] key) {
+        if (!hasFingerprints()) {
+            return findSlot(key);
+        }
+        int entryCount = getEntryCount();
+        int fingerprints = keySlotOffset(entryCount);
+        byte fingerprint = fingerprint(key);
+        FingerprintSearch search = FingerprintSearch.INSTANCE;
+        for (int i = search.indexOf(buffer(), fingerprints, 0, entryCount, fingerprint);
+             i >= 0;
+             i = search.indexOf(buffer(), fingerprints, i + 1, entryCount, fingerprint)) {
+            if (compareKeyAt(i, key) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Leaves of different layouts can be copied into each other, fingerprints and prefixes are computed
+     * when the source has none. Entries of fixed size leaves and of leaves of the other format are put one by one.
+     *
+     * @throws IllegalStateException if entries of a fixed size leaf do not fit, a full one holds more entries than
+     *                               a slotted leaf could, so the file has to be opened with the same fixed sizes
+     */
+    @Override
+    public void copyEntries(Page page, int startIdx, int endIdx) {
+        int count = Math.min(endIdx, page.getEntryCount()) - startIdx;
+        if (page instanceof FixedLeafPage) {
+            if (!putAll(page, startIdx, count)) {
+                throw new IllegalStateException("Entries " + startIdx + ".." + (startIdx + count) + " of fixed size leaf "
+                        + page.pageId() + " do not fit slotted leaf " + pageId());
+            }
+            return;
+        }
+        LeafPage source = (LeafPage) page;
+        if (source.isCompact() != isCompact()) {
+            if (putAll(source, startIdx, count)) {
+                return;
+            }
+            // entries of a full page may not fit the other format, the copy keeps the layout of the source
+            resetToLayoutOf(source);
+        }
+        if (!hasFingerprints() && !hasKeyPrefixes() && !source.hasFingerprints() && !source.hasKeyPrefixes()) {
+            super.copyEntries(page, startIdx, endIdx);
+            return;
+        }
+        // every key slot is rewritten by packPayloads, so the slot table is not copied
+        packPayloads(source, startIdx, count);
+        if (hasKeyPrefixes()) {
+            for (int i = 0; i < count; i++) {
+                int slotOffset = keySlotOffset(i);
+                int keyOffset = Short.toUnsignedInt(buffer().getShort(slotOffset));
+                buffer().putInt(slotOffset + SLOT_SIZE, prefix(keyOffset));
+            }
+        }
+        if (!hasFingerprints()) {
+            return;
+        }
+        int fingerprints = keySlotOffset(count);
+        if (source.hasFingerprints()) {
+            int sourceFingerprints = source.keySlotOffset(source.getEntryCount());
+            buffer().put(fingerprints, source.buffer(), sourceFingerprints + startIdx, count);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int keyOffset = Short.toUnsignedInt(buffer().getShort(keySlotOffset(i)));
+            int keyLen = lengthAt(buffer(), keyOffset);
+            buffer().put(fingerprints + i, fingerprint(buffer(), keyOffset + lengthSize(keyLen), keyLen));
+        }
+    }
+
+    /**
+     * @return false if the entries do not fit this page, the page is left with part of them
+     */
+    private boolean putAll(Page source, int startIdx, int count) {
+        for (int i = startIdx; i < startIdx + count; i++) {
+            byte[][] entry = source.getEntry(i);
+            if (!put(entry[0], entry[1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * With key prefixes most probes are resolved by comparing the prefix kept in the slot table,
+     * the key in the payload area is read only when prefixes are equal.
+     */
+    @Override
+    protected int binarySearch(byte[] key, int l, int r) {
+        if (!hasKeyPrefixes()) {
+            return super.binarySearch(key, l, r);
+        }
+        int prefix = prefix(key);
+        while (l <= r) {
+            int mid = (l + r) >>> 1;
+            int compare = Integer.compareUnsigned(buffer().getInt(keySlotOffset(mid) + SLOT_SIZE), prefix);
+            if (compare == 0) {
+                compare = compareKeyAt(mid, key);
+            }
+            if (compare < 0) {
+                l = mid + 1;
+            } else if (compare > 0) {
+                r = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(l + 1);
+    }
+
+    private void writeSlot(int slotOffset, int payloadOffset, byte[] key) {
+        buffer().putShort(slotOffset, (short) payloadOffset);
+        if (hasKeyPrefixes()) {
+            buffer().putInt(slotOffset + SLOT_SIZE, prefix(key));
+        }
+    }
+
+    /**
+     * First bytes of the key as an unsigned big endian int, padded with zeros.
+     * Keys with different prefixes compare the same way as their prefixes.
+     */
+    static int prefix(byte[] key) {
+        int prefix = 0;
+        for (int i = 0; i < PREFIX_SIZE; i++) {
+            prefix = prefix << 8 | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return prefix;
+    }
+
+    private int prefix(int keyOffset) {
+        int keyLen = lengthAt(buffer(), keyOffset);
+        int keyStart = keyOffset + lengthSize(keyLen);
+        int prefix = 0;
+        for (int i = 0; i < PREFIX_SIZE; i++) {
+            prefix = prefix << 8 | (i < keyLen ? buffer().get(keyStart + i) & 0xFF : 0);
+        }
+        return prefix;
+    }
+
+    /**
+     * @return offset of the value length field of the given slot
+     */
+    private int valueOffset(int slot) {
+        int keyOffset = Short.toUnsignedInt(buffer().getShort(keySlotOffset(slot)));
+        int keyLen = lengthAt(buffer(), keyOffset);
+        return keyOffset + lengthSize(keyLen) + keyLen;
+    }
+
+    protected boolean hasKeyPrefixes() {
+        return (buffer().get(0) & KEY_PREFIX_FLAG) == KEY_PREFIX_FLAG;
+    }
+
+    private int slotWidth() {
+        return hasKeyPrefixes() ? SLOT_SIZE + PREFIX_SIZE : SLOT_SIZE;
+    }
+
+    protected boolean hasFingerprints() {
+        return (buffer().get(0) & FINGERPRINT_FLAG) == FINGERPRINT_FLAG;
+    }
+
+    static byte fingerprint(byte[] key) {
+        int hash = 1;
+        for (byte b : key) {
+            hash = 31 * hash + b;
+        }
+        return mix(hash);
+    }
+
+    static byte fingerprint(ByteBuffer buffer, int offset, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.get(offset + i);
+        }
+        return mix(hash);
+    }
+
+    private static byte mix(int hash) {
+        hash ^= hash >>> 16;
+        return (byte) (hash ^ hash >>> 8);
+    }
+
+    @Override
+    protected int payloadLength(ByteBuffer buffer, int offset) {
+        int keyLen = lengthAt(buffer, offset);
+        int valueOffset = offset + lengthSize(keyLen) + keyLen;
+        int valueLen = lengthAt(buffer, valueOffset);
+        return valueOffset + lengthSize(valueLen) + valueLen - offset;
+    }
+
+    @Override
+    protected int keySlotOffset(int idx) {
+        return HEADER_SIZE + slotWidth() * idx;
+    }
+
     @Override
     protected short entrySize() {
-        return SLOT_SIZE;
+        return (short) (hasFingerprints() ? slotWidth() + 1 : slotWidth());
     }
 
     @Override
@@ -150,6 +447,6 @@ public class LeafPage extends AbstractPage implements Page {
 
     @Override
     protected int internalOverhead() {
-        return PAYLOAD_SIZE_FIELD_SIZE * 2 + SLOT_SIZE;// one for the key and one for the value
+        return PAYLOAD_SIZE_FIELD_SIZE * 2 + entrySize();// one for the key and one for the value
     }
 }
@@ -20,6 +20,9 @@ import java.util.concurrent.atomic.AtomicLong;
 
 public class MMAPBasedPageManager implements PageManager {
     private static final int PAGE_POINTER_SIZE = 8;
+    // new internal pages are compact while the file is below half of the 4 byte id space,
+    // so children allocated after their parent still get ids which fit
+    private static final long COMPACT_INTERNAL_PAGES_LIMIT = (InternalPage.MAX_COMPACT_CHILD_ID + 1) / 2;
 
     private final FileChannel channel;
     private final int pageSize;
@@ -27,9 +30,81 @@ public class MMAPBasedPageManager implements PageManager {
     private final Queue<Long> freePagesIds = new ConcurrentLinkedUniqueQueue<>();
     private final AtomicLong currentPageId;
     private final MappedByteBuffer rootPointer;
+    private final boolean leafFingerprints;
+    private final boolean leafKeyPrefixes;
+    private final KeySearch keySearch;
+    private final int fixedKeySize;
+    private final int fixedValueSize;
+    private final boolean eytzingerInternalPages;
+    private final boolean compactPages;
 
     public MMAPBasedPageManager(File file, int pageSize) throws IOException {
+        this(file, pageSize, false);
+    }
+
+    /**
+     * @param leafFingerprints new leaves keep a 1 byte fingerprint per key for point lookups,
+     *                         leaves of both layouts can live in the same file
+     */
+    public MMAPBasedPageManager(File file, int pageSize, boolean leafFingerprints) throws IOException {
+        this(file, pageSize, leafFingerprints, false);
+    }
+
+    /**
+     * @param leafKeyPrefixes slots of new leaves keep the first bytes of the key, so binary search mostly stays
+     *                        in the slot table
+     */
+    public MMAPBasedPageManager(File file, int pageSize, boolean leafFingerprints, boolean leafKeyPrefixes) throws IOException {
+        this(file, pageSize, leafFingerprints, leafKeyPrefixes, KeySearch.BINARY);
+    }
+
+    /**
+     * @param keySearch how pages of this file look up keys, not stored in the file,
+     *                  so the same file can be opened with another search later
+     */
+    public MMAPBasedPageManager(File file, int pageSize, boolean leafFingerprints, boolean leafKeyPrefixes,
+                                KeySearch keySearch) throws IOException {
+        this(file, pageSize, leafFingerprints, leafKeyPrefixes, keySearch, false);
+    }
+
+    /**
+     * @param eytzingerInternalPages new internal pages keep separator prefixes in Eytzinger order for child lookups,
+     *                               internal pages of both layouts can live in the same file
+     */
+    public MMAPBasedPageManager(File file, int pageSize, boolean leafFingerprints, boolean leafKeyPrefixes,
+                                KeySearch keySearch, boolean eytzingerInternalPages) throws IOException {
+        this(file, pageSize, leafFingerprints, leafKeyPrefixes, keySearch, eytzingerInternalPages, false);
+    }
+
+    /**
+     * @param compactPages new pages use format v2 with varint key and value lengths, internal pages
+     *                     with 4 byte child ids while the file is small enough, pages of both formats
+     *                     can live in the same file and are converted as they are copied
+     */
+    public MMAPBasedPageManager(File file, int pageSize, boolean leafFingerprints, boolean leafKeyPrefixes,
+                                KeySearch keySearch, boolean eytzingerInternalPages, boolean compactPages) throws IOException {
+        this(file, pageSize, leafFingerprints, leafKeyPrefixes, keySearch, 0, 0, eytzingerInternalPages, compactPages);
+    }
+
+    /**
+     * New leaves pack entries of the given sizes without slots, every key and value put into the tree must have
+     * exactly these sizes.
+     */
+    public MMAPBasedPageManager(File file, int pageSize, int fixedKeySize, int fixedValueSize, KeySearch keySearch) throws IOException {
+        this(file, pageSize, false, false, keySearch, checkFixedKeySize(fixedKeySize, fixedValueSize), fixedValueSize, false, false);
+    }
+
+    private MMAPBasedPageManager(File file, int pageSize, boolean leafFingerprints, boolean leafKeyPrefixes,
+                                 KeySearch keySearch, int fixedKeySize, int fixedValueSize,
+                                 boolean eytzingerInternalPages, boolean compactPages) throws IOException {
         this.pageSize = pageSize;
+        this.leafFingerprints = leafFingerprints;
+        this.leafKeyPrefixes = leafKeyPrefixes;
+        this.keySearch = keySearch;
+        this.fixedKeySize = fixedKeySize;
+        this.fixedValueSize = fixedValueSize;
+        this.eytzingerInternalPages = eytzingerInternalPages;
+        this.compactPages = compactPages;
         this.channel = FileChannel.open(
                 file.toPath(),
                 StandardOpenOption.READ,
@@ -40,6 +115,15 @@ public class MMAPBasedPageManager implements PageManager {
         this.currentPageId = new AtomicLong(channel.size() / pageSize);
     }
 
+    private static int checkFixedKeySize(int keySize, int valueSize) {
+        // a split has to leave at least two entries in each half
+        if (keySize <= 0 || valueSize < 0 || FixedLeafPage.capacity(keySize, valueSize) < 4) {
+            throw new IllegalArgumentException("Fixed size leaves can't hold " + keySize + " byte keys and "
+                    + valueSize + " byte values");
+        }
+        return keySize;
+    }
+
     @Override
     public Page open() {
         long rootId = rootPointer.getLong(0);
@@ -74,7 +158,9 @@ public class MMAPBasedPageManager implements PageManager {
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        Page page = InternalPage.newPage(pageId, emptyPage);
+        boolean compact = compactPages && currentPageId.get() < COMPACT_INTERNAL_PAGES_LIMIT;
+        AbstractPage page = (AbstractPage) InternalPage.newPage(pageId, emptyPage, true, eytzingerInternalPages, compact);
+        page.setKeySearch(keySearch);
         pages.add(pageId);
         writePage(pageId, page);
         return page;
@@ -95,7 +181,10 @@ public class MMAPBasedPageManager implements PageManager {
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        Page page = LeafPage.newPage(pageId, emptyPage);
+        AbstractPage page = (AbstractPage) (fixedKeySize > 0
+                ? FixedLeafPage.newPage(pageId, emptyPage, fixedKeySize, fixedValueSize)
+                : LeafPage.newPage(pageId, emptyPage, leafFingerprints, leafKeyPrefixes, compactPages));
+        page.setKeySearch(keySearch);
         pages.add(pageId);
         writePage(pageId, page);
         return page;
@@ -112,10 +201,11 @@ public class MMAPBasedPageManager implements PageManager {
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        Page read = PageFactory.read(buffer);
+        AbstractPage read = (AbstractPage) PageFactory.read(buffer);
         if (read.isDeleted()) {
             throw new IllegalStateException("Page with id " + pageId + " is deleted and cannot be read.");
         }
+        read.setKeySearch(keySearch);
         return read;
     }
 
@@ -143,12 +233,52 @@ public class MMAPBasedPageManager implements PageManager {
 
     @Override
     public void freePage(long pageId) {
-        if (pages.remove(pageId)) {
-            Page page = readPage(pageId);
-            page.markDeleted();
-            writePage(pageId, page);
-            freePagesIds.offer(pageId);
+        freePages(new long[]{pageId});
+    }
+
+    /**
+     * Marks pages deleted with one mapping and one force per contiguous range of ids.
+     */
+    @Override
+    public void freePages(long[] pageIds) {
+        int i = 0;
+        while (i < pageIds.length) {
+            if (!pages.remove(pageIds[i])) {
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < pageIds.length && pageIds[end] == pageIds[end - 1] + 1 && pages.remove(pageIds[end])) {
+                end++;
+            }
+            try {
+                markDeleted(pageIds[i], end - i);
+            } catch (RuntimeException e) {
+                // pages of the failed range stay allocated, so the caller could free them again
+                for (int j = i; j < end; j++) {
+                    pages.add(pageIds[j]);
+                }
+                throw e;
+            }
+            for (int j = i; j < end; j++) {
+                freePagesIds.offer(pageIds[j]);
+            }
+            i = end;
+        }
+    }
+
+    private void markDeleted(long firstPageId, int count) {
+        MappedByteBuffer range;
+        try {
+            range = channel.map(FileChannel.MapMode.READ_WRITE, firstPageId * pageSize + PAGE_POINTER_SIZE, (long) count * pageSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (int i = 0; i < count; i++) {
+            int metaOffset = i * pageSize;
+            range.put(metaOffset, (byte) (range.get(metaOffset) | PageFactory.IS_DELETED));
         }
+        range.force();
     }
 
     public long getAllocatedPageCount() {
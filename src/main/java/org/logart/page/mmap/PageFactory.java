@@ -7,13 +7,24 @@ import java.nio.ByteBuffer;
 public class PageFactory {
     public static final int LEAF_FLAG = 0b1000_0000;
     public static final int IS_DELETED = 0b0010_0000;
+    public static final int FINGERPRINT_FLAG = 0b0001_0000;
+    public static final int KEY_PREFIX_FLAG = 0b0000_1000;
+    public static final int FIXED_SIZE_FLAG = 0b0000_0100;
+    public static final int EYTZINGER_FLAG = 0b0000_0010;
+    public static final int COMPACT_FLAG = 0b0000_0001;
+    /**
+     * Flags of optional page layouts, a page keeps its own layout when entries of another page are copied into it.
+     */
+    public static final int LAYOUT_FLAGS = FINGERPRINT_FLAG | KEY_PREFIX_FLAG | EYTZINGER_FLAG | COMPACT_FLAG;
 
     public static Page read(ByteBuffer buffer) {
         buffer.rewind();
         byte pageMeta = buffer.get(0);
 
         if ((pageMeta & LEAF_FLAG) == LEAF_FLAG) {
-            return LeafPage.readPage(buffer);
+            return (pageMeta & FIXED_SIZE_FLAG) == FIXED_SIZE_FLAG
+                    ? FixedLeafPage.readPage(buffer)
+                    : LeafPage.readPage(buffer);
         } else {
             return InternalPage.readPage(buffer);
         }
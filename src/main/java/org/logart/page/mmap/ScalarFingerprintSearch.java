@@ -0,0 +1,33 @@
+package org.logart.page.mmap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compares 8 fingerprints at a time packed into a long (SIMD within a register).
+ */
+class ScalarFingerprintSearch implements FingerprintSearch {
+    private static final long LOW_BITS = 0x7F7F_7F7F_7F7F_7F7FL;
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int offset, int from, int to, byte fingerprint) {
+        long pattern = (fingerprint & 0xFFL) * 0x0101_0101_0101_0101L;
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long diff = buffer.getLong(offset + i) ^ pattern;
+            // high bit is set only in bytes equal to zero, exact unlike the usual has-zero-byte trick
+            long matches = ~(((diff & LOW_BITS) + LOW_BITS) | diff | LOW_BITS);
+            if (matches != 0) {
+                // pages are big endian, the first byte in memory is the most significant one
+                return i + ((bigEndian ? Long.numberOfLeadingZeros(matches) : Long.numberOfTrailingZeros(matches)) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (buffer.get(offset + i) == fingerprint) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,40 @@
+package org.logart.page.mmap;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compares a whole vector of fingerprints per step, 32 on AVX2 and 64 on AVX-512.
+ * Fingerprints are copied to a per-thread array first, the array is at most a few hundred bytes for a 4 KB page.
+ * Needs {@code --add-modules jdk.incubator.vector}, see {@link FingerprintSearch}.
+ */
+class VectorFingerprintSearch implements FingerprintSearch {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[AbstractPage.PAGE_SIZE]);
+
+    @Override
+    public int indexOf(ByteBuffer buffer, int offset, int from, int to, byte fingerprint) {
+        int length = to - from;
+        byte[] fingerprints = SCRATCH.get();
+        if (fingerprints.length < length) {
+            fingerprints = new byte[length];
+            SCRATCH.set(fingerprints);
+        }
+        buffer.get(offset + from, fingerprints, 0, length);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            int match = ByteVector.fromArray(SPECIES, fingerprints, i).eq(fingerprint).firstTrue();
+            if (match < SPECIES.length()) {
+                return from + i + match;
+            }
+        }
+        for (; i < length; i++) {
+            if (fingerprints[i] == fingerprint) {
+                return from + i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,404 @@
+package org.logart.tree;
+
+import org.logart.node.BTreeNode;
+import org.logart.node.NodeManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Copy-on-write delete, a counterpart of {@link PutHandler}.
+ * Every node on the path to a deleted key is rebuilt into a newly allocated node,
+ * replaced nodes are reported in {@link DeleteResult#oldNodes()} and freed after the new root is published.
+ * <p>
+ * Child of an internal node with keys k0..kn-1 at index i holds keys in [k(i-1), k(i)),
+ * children which are entirely inside a deleted range are dropped without reading their leaves.
+ * Internal nodes record whether all their children are leaves, so those are retired by id without being read either.
+ */
+public class DeleteHandler {
+    private static final Comparator<byte[]> COMPARATOR = Arrays::compareUnsigned;
+    private final NodeManager nodeManager;
+
+    public DeleteHandler(NodeManager nodeManager) {
+        this.nodeManager = nodeManager;
+    }
+
+    /**
+     * @return new root and replaced nodes, or null if the key is not present
+     */
+    public DeleteResult delete(BTreeNode root, byte[] key) {
+        return delete(root, new KeyRange(key, key, true));
+    }
+
+    /**
+     * Deletes all keys in [from, to).
+     *
+     * @return new root and replaced nodes, or null if nothing was deleted
+     */
+    public DeleteResult deleteRange(BTreeNode root, byte[] from, byte[] to) {
+        if (COMPARATOR.compare(from, to) >= 0) {
+            return null;
+        }
+        return delete(root, new KeyRange(from, to, false));
+    }
+
+    private DeleteResult delete(BTreeNode root, KeyRange range) {
+        Set<Long> oldNodes = new HashSet<>();
+        Set<Long> newNodes = new HashSet<>();
+        BTreeNode rootCopy = delete(root, range, null, null, oldNodes, newNodes);
+        if (rootCopy == root) {
+            return null;
+        }
+        if (rootCopy == null) {
+            // everything is deleted, start over with an empty leaf
+            rootCopy = allocate(true, newNodes);
+            nodeManager.writeNode(rootCopy.id(), rootCopy);
+        }
+        return new DeleteResult(rootCopy, oldNodes, newNodes);
+    }
+
+    /**
+     * @param lower inclusive lower bound of the keys in the node, null if unbounded
+     * @param upper exclusive upper bound of the keys in the node, null if unbounded
+     * @return the same node if nothing was deleted, null if the node became empty, otherwise a new node
+     */
+    private BTreeNode delete(BTreeNode node, KeyRange range, byte[] lower, byte[] upper, Set<Long> oldNodes, Set<Long> newNodes) {
+        if (node.isLeaf()) {
+            return deleteFromLeaf(node, range, oldNodes, newNodes);
+        }
+        int numKeys = node.numKeys();
+        // children of a node over leaves stay leaves, a delete only drops or merges them
+        boolean leafChildren = node.hasLeafChildren();
+        byte[][] separators = new byte[numKeys][];
+        for (int i = 0; i < numKeys; i++) {
+            separators[i] = node.get(i)[0];
+        }
+
+        boolean changed = false;
+        List<byte[]> keys = new ArrayList<>(numKeys);
+        List<Long> childIds = new ArrayList<>(numKeys + 1);
+        // null for children that are not touched by the delete
+        List<BTreeNode> childCopies = new ArrayList<>(numKeys + 1);
+        for (int i = 0; i <= numKeys; i++) {
+            byte[] childLower = i == 0 ? lower : separators[i - 1];
+            byte[] childUpper = i == numKeys ? upper : separators[i];
+            long childId = node.child(i);
+            BTreeNode childCopy = null;
+            if (range.intersects(childLower, childUpper)) {
+                if (range.covers(childLower, childUpper)) {
+                    collectSubtree(childId, leafChildren, oldNodes);
+                    changed = true;
+                    continue;
+                }
+                BTreeNode child = nodeManager.readNode(childId);
+                BTreeNode result = delete(child, range, childLower, childUpper, oldNodes, newNodes);
+                if (result == null) {
+                    changed = true;
+                    continue;
+                }
+                if (result != child) {
+                    changed = true;
+                    childCopy = result;
+                    childId = result.id();
+                }
+            }
+            // the lower bound of a child is a valid separator even if children before it were dropped
+            if (!childIds.isEmpty()) {
+                keys.add(childLower);
+            }
+            childIds.add(childId);
+            childCopies.add(childCopy);
+        }
+        if (!changed) {
+            return node;
+        }
+        oldNodes.add(node.id());
+
+        rebalance(keys, childIds, childCopies, oldNodes, newNodes);
+
+        if (childIds.isEmpty()) {
+            return null;
+        }
+        if (childIds.size() == 1) {
+            // internal node with a single child is not needed, parent will point to the child directly
+            BTreeNode onlyChild = childCopies.get(0);
+            return onlyChild != null ? onlyChild : nodeManager.readNode(childIds.get(0));
+        }
+        return buildInternal(keys, childIds, leafChildren, oldNodes, newNodes);
+    }
+
+    private BTreeNode deleteFromLeaf(BTreeNode node, KeyRange range, Set<Long> oldNodes, Set<Long> newNodes) {
+        int numKeys = node.numKeys();
+        List<byte[][]> kept = new ArrayList<>(numKeys);
+        for (int i = 0; i < numKeys; i++) {
+            byte[][] entry = node.get(i);
+            if (!range.contains(entry[0])) {
+                kept.add(entry);
+            }
+        }
+        if (kept.size() == numKeys) {
+            return node;
+        }
+        oldNodes.add(node.id());
+        if (kept.isEmpty()) {
+            return null;
+        }
+        // subset of a single page always fits into a new one
+        return buildLeaf(kept, oldNodes, newNodes);
+    }
+
+    /**
+     * Retires the node and everything under it, only internal nodes which do not record leaf children are read.
+     *
+     * @param leaf true if the node is known to be a leaf
+     */
+    private void collectSubtree(long nodeId, boolean leaf, Set<Long> oldNodes) {
+        oldNodes.add(nodeId);
+        if (leaf) {
+            return;
+        }
+        BTreeNode node = nodeManager.readNode(nodeId);
+        if (node.isLeaf()) {
+            return;
+        }
+        boolean leafChildren = node.hasLeafChildren();
+        for (int i = 0; i <= node.numKeys(); i++) {
+            collectSubtree(node.child(i), leafChildren, oldNodes);
+        }
+    }
+
+    /**
+     * Merges every underfull child produced by this delete with its left sibling (the first child with the right one).
+     * If both do not fit into a single node, entries are redistributed between two new nodes.
+     */
+    private void rebalance(List<byte[]> keys, List<Long> childIds, List<BTreeNode> childCopies, Set<Long> oldNodes, Set<Long> newNodes) {
+        for (int i = 0; i < childIds.size() && childIds.size() > 1; i++) {
+            BTreeNode childCopy = childCopies.get(i);
+            if (childCopy == null || !childCopy.isUnderfull()) {
+                continue;
+            }
+            int leftIdx = i > 0 ? i - 1 : i;
+            BTreeNode left = nodeOf(leftIdx, childIds, childCopies);
+            BTreeNode right = nodeOf(leftIdx + 1, childIds, childCopies);
+            if (left.isLeaf() != right.isLeaf()) {
+                // the tree is not height balanced, leaf and internal node could not be merged
+                continue;
+            }
+            SplitResult merged = left.isLeaf()
+                    ? mergeLeaves(left, right, oldNodes, newNodes)
+                    : mergeInternal(left, keys.get(leftIdx), right, oldNodes, newNodes);
+            if (merged == null) {
+                continue;
+            }
+            oldNodes.add(left.id());
+            oldNodes.add(right.id());
+            childIds.set(leftIdx, merged.left().id());
+            childCopies.set(leftIdx, merged.left());
+            if (merged.right() == null) {
+                keys.remove(leftIdx);
+                childIds.remove(leftIdx + 1);
+                childCopies.remove(leftIdx + 1);
+            } else {
+                keys.set(leftIdx, merged.promotedKey());
+                childIds.set(leftIdx + 1, merged.right().id());
+                childCopies.set(leftIdx + 1, merged.right());
+            }
+            i = leftIdx;
+        }
+    }
+
+    private BTreeNode nodeOf(int idx, List<Long> childIds, List<BTreeNode> childCopies) {
+        BTreeNode copy = childCopies.get(idx);
+        return copy != null ? copy : nodeManager.readNode(childIds.get(idx));
+    }
+
+    /**
+     * @return split result with only the left node if both nodes fit into one,
+     * two nodes with a new separator if entries were redistributed, or null if nothing could be done
+     */
+    private SplitResult mergeLeaves(BTreeNode left, BTreeNode right, Set<Long> oldNodes, Set<Long> newNodes) {
+        List<byte[][]> entries = new ArrayList<>(left.numKeys() + right.numKeys());
+        for (int i = 0; i < left.numKeys(); i++) {
+            entries.add(left.get(i));
+        }
+        for (int i = 0; i < right.numKeys(); i++) {
+            entries.add(right.get(i));
+        }
+        BTreeNode merged = tryBuildLeaf(entries, oldNodes, newNodes);
+        if (merged != null) {
+            return new SplitResult(null, merged, null);
+        }
+        if (entries.size() < 2) {
+            return null;
+        }
+        // split by size and not by count, so both halves fit even if entries are of different length
+        long total = 0;
+        for (byte[][] entry : entries) {
+            total += entry[0].length + entry[1].length;
+        }
+        int mid = 1;
+        long leftSize = entries.get(0)[0].length + entries.get(0)[1].length;
+        while (mid < entries.size() - 1 && leftSize * 2 < total) {
+            leftSize += entries.get(mid)[0].length + entries.get(mid)[1].length;
+            mid++;
+        }
+        BTreeNode newLeft = tryBuildLeaf(entries.subList(0, mid), oldNodes, newNodes);
+        BTreeNode newRight = tryBuildLeaf(entries.subList(mid, entries.size()), oldNodes, newNodes);
+        if (newLeft == null || newRight == null) {
+            if (newLeft != null) {
+                oldNodes.add(newLeft.id());
+            }
+            if (newRight != null) {
+                oldNodes.add(newRight.id());
+            }
+            return null;
+        }
+        return new SplitResult(entries.get(mid)[0], newLeft, newRight);
+    }
+
+    private SplitResult mergeInternal(BTreeNode left, byte[] separator, BTreeNode right, Set<Long> oldNodes, Set<Long> newNodes) {
+        List<byte[]> keys = new ArrayList<>(left.numKeys() + right.numKeys() + 1);
+        List<Long> children = new ArrayList<>(left.numKeys() + right.numKeys() + 2);
+        for (int i = 0; i < left.numKeys(); i++) {
+            keys.add(left.get(i)[0]);
+            children.add(left.child(i));
+        }
+        children.add(left.child(left.numKeys()));
+        // separator from the parent goes down between the children of the left and right nodes
+        keys.add(separator);
+        for (int i = 0; i < right.numKeys(); i++) {
+            keys.add(right.get(i)[0]);
+            children.add(right.child(i));
+        }
+        children.add(right.child(right.numKeys()));
+
+        boolean leafChildren = left.hasLeafChildren() && right.hasLeafChildren();
+        BTreeNode merged = tryBuildInternal(keys, children, leafChildren, oldNodes, newNodes);
+        if (merged != null) {
+            return new SplitResult(null, merged, null);
+        }
+        int mid = keys.size() / 2;
+        BTreeNode newLeft = buildInternal(keys.subList(0, mid), children.subList(0, mid + 1), leafChildren, oldNodes, newNodes);
+        BTreeNode newRight = buildInternal(keys.subList(mid + 1, keys.size()), children.subList(mid + 1, children.size()), leafChildren, oldNodes, newNodes);
+        return new SplitResult(keys.get(mid), newLeft, newRight);
+    }
+
+    private BTreeNode buildLeaf(List<byte[][]> entries, Set<Long> oldNodes, Set<Long> newNodes) {
+        BTreeNode leaf = tryBuildLeaf(entries, oldNodes, newNodes);
+        if (leaf == null) {
+            throw new IllegalStateException("Entries " + entries.size() + " do not fit into a leaf node.");
+        }
+        return leaf;
+    }
+
+    /**
+     * @return new leaf with all entries or null if they do not fit into a single node
+     */
+    private BTreeNode tryBuildLeaf(List<byte[][]> entries, Set<Long> oldNodes, Set<Long> newNodes) {
+        BTreeNode leaf = allocate(true, newNodes);
+        for (byte[][] entry : entries) {
+            int numKeys = leaf.numKeys();
+            if (leaf.isAlmostFull(entry[0].length + entry[1].length)) {
+                // allocated node is not reachable, free it together with replaced nodes
+                oldNodes.add(leaf.id());
+                return null;
+            }
+            leaf.put(entry[0], entry[1]);
+            if (leaf.numKeys() == numKeys) {
+                oldNodes.add(leaf.id());
+                return null;
+            }
+        }
+        nodeManager.writeNode(leaf.id(), leaf);
+        return leaf;
+    }
+
+    /**
+     * Builds an internal node, if keys do not fit into a single node,
+     * the middle key is promoted to a new parent the same way {@link PutHandler} splits nodes.
+     *
+     * @param leafChildren true if all children are leaves
+     */
+    private BTreeNode buildInternal(List<byte[]> keys, List<Long> children, boolean leafChildren, Set<Long> oldNodes, Set<Long> newNodes) {
+        if (keys.isEmpty()) {
+            return nodeManager.readNode(children.get(0));
+        }
+        BTreeNode node = tryBuildInternal(keys, children, leafChildren, oldNodes, newNodes);
+        if (node != null) {
+            return node;
+        }
+        int mid = keys.size() / 2;
+        BTreeNode left = buildInternal(keys.subList(0, mid), children.subList(0, mid + 1), leafChildren, oldNodes, newNodes);
+        BTreeNode right = buildInternal(keys.subList(mid + 1, keys.size()), children.subList(mid + 1, children.size()), leafChildren, oldNodes, newNodes);
+        BTreeNode parent = allocate(false, newNodes);
+        parent.addChildren(keys.get(mid), left.id(), right.id());
+        parent.setLeafChildren(left.isLeaf() && right.isLeaf());
+        nodeManager.writeNode(parent.id(), parent);
+        return parent;
+    }
+
+    private BTreeNode tryBuildInternal(List<byte[]> keys, List<Long> children, boolean leafChildren, Set<Long> oldNodes, Set<Long> newNodes) {
+        BTreeNode node = allocate(false, newNodes);
+        node.setLeafChildren(leafChildren);
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            if (node.isAlmostFull(key.length)) {
+                oldNodes.add(node.id());
+                return null;
+            }
+            // keys are sorted, so every new key is appended with its right child
+            node.addChildren(key, children.get(i), children.get(i + 1));
+            if (node.numKeys() != i + 1) {
+                oldNodes.add(node.id());
+                return null;
+            }
+        }
+        nodeManager.writeNode(node.id(), node);
+        return node;
+    }
+
+    private BTreeNode allocate(boolean leaf, Set<Long> newNodes) {
+        BTreeNode node = leaf
+                ? nodeManager.allocateLeafNode()
+                : nodeManager.allocateNode();
+        newNodes.add(node.id());
+        return node;
+    }
+
+    private record KeyRange(byte[] from, byte[] to, boolean toInclusive) {
+
+        boolean contains(byte[] key) {
+            return COMPARATOR.compare(from, key) <= 0 && beforeEnd(key);
+        }
+
+        /**
+         * @return true if some keys in [lower, upper) could be in the range
+         */
+        boolean intersects(byte[] lower, byte[] upper) {
+            return (upper == null || COMPARATOR.compare(from, upper) < 0)
+                    && (lower == null || beforeEnd(lower));
+        }
+
+        /**
+         * @return true if all keys in [lower, upper) are in the range
+         */
+        boolean covers(byte[] lower, byte[] upper) {
+            // empty key is the smallest possible key, so it covers an unbounded lower end
+            boolean lowerCovered = lower == null
+                    ? from.length == 0
+                    : COMPARATOR.compare(from, lower) <= 0;
+            return lowerCovered
+                    && upper != null
+                    && COMPARATOR.compare(upper, to) <= 0;
+        }
+
+        private boolean beforeEnd(byte[] key) {
+            int compare = COMPARATOR.compare(key, to);
+            return toInclusive ? compare <= 0 : compare < 0;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.logart.tree;
+
+import org.logart.node.BTreeNode;
+
+import java.util.Set;
+
+public record DeleteResult(
+        BTreeNode nodeCopy,
+        Set<Long> oldNodes,
+        // nodes allocated by this delete, only reachable from nodeCopy or already in oldNodes
+        Set<Long> newNodes
+) {
+}
@@ -0,0 +1,78 @@
+package org.logart.tree;
+
+import org.logart.node.BTreeNode;
+import org.logart.node.NodeManager;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Looks up a batch of keys with a single descent.
+ * Keys are sorted, so keys falling into the same child are contiguous and every page on the way is visited once
+ * for the whole group instead of once per key.
+ */
+public class MultiGetHandler {
+    private static final Comparator<byte[]> COMPARATOR = Arrays::compareUnsigned;
+    private final NodeManager nodeManager;
+
+    public MultiGetHandler(NodeManager nodeManager) {
+        this.nodeManager = nodeManager;
+    }
+
+    /**
+     * @return values in the order of the given keys, null for missing keys
+     */
+    public List<byte[]> multiGet(BTreeNode root, List<byte[]> keys) {
+        byte[][] values = new byte[keys.size()][];
+        if (keys.isEmpty()) {
+            return Arrays.asList(values);
+        }
+        byte[][] keyArray = keys.toArray(new byte[0][]);
+        // positions of the keys in the input, sorted by key
+        Integer[] order = new Integer[keyArray.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> COMPARATOR.compare(keyArray[a], keyArray[b]));
+        int[] sorted = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = order[i];
+        }
+        lookup(root, keyArray, sorted, 0, sorted.length, values);
+        return Arrays.asList(values);
+    }
+
+    private void lookup(BTreeNode node, byte[][] keys, int[] sorted, int from, int to, byte[][] values) {
+        if (node.isLeaf()) {
+            for (int i = from; i < to; i++) {
+                values[sorted[i]] = node.get(keys[sorted[i]]);
+            }
+            return;
+        }
+        // partition keys by child, a group is a range of sorted keys going to the same child
+        long[] childIds = new long[to - from];
+        int[] groupEnds = new int[to - from];
+        int groups = 0;
+        for (int i = from; i < to; i++) {
+            long childId = node.findChild(keys[sorted[i]]);
+            if (groups > 0 && childIds[groups - 1] == childId) {
+                groupEnds[groups - 1] = i + 1;
+            } else {
+                childIds[groups] = childId;
+                groupEnds[groups] = i + 1;
+                groups++;
+            }
+        }
+        // read all children of the next level before descending, so their pages are loaded together
+        BTreeNode[] children = new BTreeNode[groups];
+        for (int g = 0; g < groups; g++) {
+            children[g] = nodeManager.readNode(childIds[g]);
+        }
+        int groupStart = from;
+        for (int g = 0; g < groups; g++) {
+            lookup(children[g], keys, sorted, groupStart, groupEnds[g], values);
+            groupStart = groupEnds[g];
+        }
+    }
+}
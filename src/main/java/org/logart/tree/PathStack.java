@@ -0,0 +1,87 @@
+package org.logart.tree;
+
+import java.util.Arrays;
+
+/**
+ * Reusable per-thread record of a single write: ids of nodes replaced on the path and ids of nodes allocated for it.
+ * Primitive arrays only grow, so a steady-state write does not allocate for bookkeeping.
+ * The content is valid until the next write on the same thread.
+ */
+public final class PathStack {
+    private long[] oldIds = new long[16];
+    private int oldCount;
+    private long[] newIds = new long[16];
+    private int newCount;
+
+    void clear() {
+        oldCount = 0;
+        newCount = 0;
+    }
+
+    void pushOld(long id) {
+        if (oldCount == oldIds.length) {
+            oldIds = Arrays.copyOf(oldIds, oldCount * 2);
+        }
+        oldIds[oldCount++] = id;
+    }
+
+    void pushNew(long id) {
+        if (newCount == newIds.length) {
+            newIds = Arrays.copyOf(newIds, newCount * 2);
+        }
+        newIds[newCount++] = id;
+    }
+
+    public int oldCount() {
+        return oldCount;
+    }
+
+    public long oldId(int idx) {
+        return oldIds[idx];
+    }
+
+    public int newCount() {
+        return newCount;
+    }
+
+    public long newId(int idx) {
+        return newIds[idx];
+    }
+
+    /**
+     * @return ids of replaced nodes, the first {@link #oldCount()} are valid
+     */
+    public long[] oldIds() {
+        return oldIds;
+    }
+
+    /**
+     * Moves ids of replaced nodes which were published before this write in front of the ones
+     * which were allocated and replaced by this write, the order within both parts is not kept.
+     *
+     * @return number of replaced nodes which were published, they are the first ones of {@link #oldIds()}
+     */
+    public int partitionPublished() {
+        int published = 0;
+        for (int i = 0; i < oldCount; i++) {
+            long id = oldIds[i];
+            if (!isNew(id)) {
+                oldIds[i] = oldIds[published];
+                oldIds[published++] = id;
+            }
+        }
+        return published;
+    }
+
+    /**
+     * Path is as long as the tree height, linear scan is cheaper than hashing here.
+     */
+    public boolean isNew(long id) {
+        for (int i = 0; i < newCount; i++) {
+            if (newIds[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -5,89 +5,141 @@ import org.logart.node.NodeManager;
 
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Set;
 
 public class PutHandler {
     private static final Comparator<byte[]> COMPARATOR = Arrays::compareUnsigned;
     private final NodeManager nodeManager;
+    private final ThreadLocal<PathStack> paths = ThreadLocal.withInitial(PathStack::new);
 
     public PutHandler(NodeManager nodeManager) {
         this.nodeManager = nodeManager;
     }
 
-    public PutResult put(final BTreeNode node, byte[] key, byte[] value, long version) {
-        Set<Long> oldNodes = new HashSet<>();
-        SplitResult splitResult = null;
-        if (node.isAlmostFull(key.length + value.length)) {
-            // split node prematurely if after insert it will be full
-            splitResult = split(node);
-        }
-        oldNodes.add(node.id());
-        final BTreeNode nodeCopy;
-        if (splitResult != null && splitResult.promotedKey() != null) {
-            nodeCopy = nodeManager.allocateNode();
-            nodeCopy.addChildren(splitResult.promotedKey(), splitResult.left().id(), splitResult.right().id());
-            putIntoNewlyAllocatedChild(key, value, splitResult);
-            nodeManager.writeNode(nodeCopy.id(), nodeCopy);
-            return new PutResult(nodeCopy, oldNodes);
+    public PutResult put(final BTreeNode root, byte[] key, byte[] value, long version) {
+        PathStack path = paths.get();
+        path.clear();
+        try {
+            return put(root, key, value, path);
+        } catch (RuntimeException e) {
+            // a leaf can reject the entry after the path above it is copied, nothing of it was published
+            for (int i = 0; i < path.newCount(); i++) {
+                nodeManager.discardNode(path.newId(i));
+            }
+            throw e;
         }
-        if (node.isLeaf()) {
-            nodeCopy = nodeManager.allocateLeafNode();
-            nodeCopy.copy(node);
-            nodeCopy.put(key, value);
-        } else {
-            long childId = node.findChild(key);
-            BTreeNode child = nodeManager.readNode(childId);
-
-            PutResult putResult = put(child, key, value, version);
-            oldNodes.addAll(putResult.oldNodes());
+    }
 
-            BTreeNode childCopy = putResult.nodeCopy();
-            nodeCopy = nodeManager.allocateNode();
+    private PutResult put(final BTreeNode root, byte[] key, byte[] value, PathStack path) {
+        BTreeNode result = null;
+        // copy of the parent which has to point to the copy of the current node, null for the root
+        BTreeNode parentCopy = null;
+        BTreeNode node = root;
+        // the descent took the last child at every level so far
+        boolean rightmost = true;
+        while (true) {
+            path.pushOld(node.id());
+            if (node.needsSplit(key.length + value.length)) {
+                // split node prematurely if after insert it will be full
+                boolean append = rightmost && node.isAppend(key);
+                SplitResult splitResult = split(node, key, append, path);
+                BTreeNode nodeCopy;
+                if (append && parentCopy != null && !parentCopy.isAlmostFull(splitResult.promotedKey().length)) {
+                    // appended separator goes after the last one, so the parent takes both halves in place of the node
+                    // instead of a new level being added under it on every split
+                    nodeCopy = parentCopy;
+                    nodeCopy.addChildren(splitResult.promotedKey(), splitResult.left().id(), splitResult.right().id());
+                } else {
+                    nodeCopy = allocate(false, path);
+                    nodeCopy.addChildren(splitResult.promotedKey(), splitResult.left().id(), splitResult.right().id());
+                    nodeCopy.setLeafChildren(splitResult.left().isLeaf());
+                    result = attach(parentCopy, node.id(), nodeCopy, result);
+                }
+                BTreeNode half = COMPARATOR.compare(key, splitResult.promotedKey()) < 0
+                        ? splitResult.left()
+                        : splitResult.right();
+                if (half.isLeaf()) {
+                    half.put(key, value);
+                    nodeManager.writeNode(half.id(), half);
+                    nodeManager.writeNode(nodeCopy.id(), nodeCopy);
+                    return new PutResult(result, path);
+                }
+                // half of a split internal node can not hold a value, the key has to go down to the leaf
+                nodeManager.writeNode(nodeCopy.id(), nodeCopy);
+                parentCopy = nodeCopy;
+                rightmost = rightmost && half == splitResult.right();
+                node = half;
+                continue;
+            }
+            if (node.isLeaf()) {
+                BTreeNode nodeCopy = allocate(true, path);
+                nodeCopy.copy(node);
+                nodeCopy.put(key, value);
+                result = attach(parentCopy, node.id(), nodeCopy, result);
+                nodeManager.writeNode(nodeCopy.id(), nodeCopy);
+                return new PutResult(result, path);
+            }
+            BTreeNode nodeCopy = allocate(false, path);
             nodeCopy.copy(node);
-            nodeCopy.replaceChild(childId, childCopy.id());
-            oldNodes.add(childId);
+            result = attach(parentCopy, node.id(), nodeCopy, result);
+            parentCopy = nodeCopy;
+            long childId = node.findChild(key);
+            rightmost = rightmost && childId == node.child(node.numKeys());
+            node = nodeManager.readNode(childId);
         }
-
-        nodeManager.writeNode(nodeCopy.id(), nodeCopy);
-        return new PutResult(nodeCopy, oldNodes);
     }
 
-    private void putIntoNewlyAllocatedChild(byte[] key, byte[] value, SplitResult splitResult) {
-        final BTreeNode childNode;
-        if (COMPARATOR.compare(key, splitResult.promotedKey()) < 0) {
-            childNode = nodeManager.readNode(splitResult.left().id());
-        } else {
-            childNode = nodeManager.readNode(splitResult.right().id());
+    // copies are allocated top-down, so the parent copy is final once it points to the copy of its child
+    private BTreeNode attach(BTreeNode parentCopy, long replacedId, BTreeNode nodeCopy, BTreeNode result) {
+        if (parentCopy == null) {
+            return nodeCopy;
         }
-        childNode.put(key, value);
+        parentCopy.replaceChild(replacedId, nodeCopy.id());
+        nodeManager.writeNode(parentCopy.id(), parentCopy);
+        return result;
     }
 
-    private SplitResult split(BTreeNode node) {
-        int mid = (node.numKeys() + 1) / 2;
-        if (node.isLeaf()) {
-            BTreeNode left = nodeManager.allocateLeafNode();
-            for (int i = 0; i < mid; i++) {
-                byte[][] data = node.get(i);
-                left.put(data[0], data[1]);
-            }
+    // every allocation is tracked, so pages could be given back if the new version is not published
+    private BTreeNode allocate(boolean leaf, PathStack path) {
+        BTreeNode node = leaf
+                ? nodeManager.allocateLeafNode()
+                : nodeManager.allocateNode();
+        path.pushNew(node.id());
+        return node;
+    }
 
-            BTreeNode right = nodeManager.allocateLeafNode();
-            for (int i = mid; i < node.numKeys(); i++) {
-                byte[][] data = node.get(i);
-                right.put(data[0], data[1]);
+    /**
+     * @param append the key goes past the end of the rightmost node, it is taken for a sequential insert
+     *               and the node is split unevenly, the left half is kept full since nothing is inserted there anymore
+     */
+    private SplitResult split(BTreeNode node, byte[] key, boolean append, PathStack path) {
+        int numKeys = node.numKeys();
+        int mid = (numKeys + 1) / 2;
+        if (node.isLeaf()) {
+            BTreeNode left = allocate(true, path);
+            BTreeNode right = allocate(true, path);
+            if (append) {
+                // split at the insertion point, the right half starts with the appended key
+                left.copyEntries(node, 0, numKeys);
+                nodeManager.writeNode(left.id(), left);
+                nodeManager.writeNode(right.id(), right);
+                return new SplitResult(key, left, right);
             }
+            left.copyEntries(node, 0, mid);
+            right.copyEntries(node, mid, numKeys);
 
             nodeManager.writeNode(left.id(), left);
             nodeManager.writeNode(right.id(), right);
             return new SplitResult(right.get(0)[0], left, right);
         } else {
+            if (append) {
+                // keep a single key on the right, it is the only half sequential inserts go on with
+                mid = Math.max(mid, numKeys - 2);
+            }
             byte[] promotedKey = node.get(mid)[0];
-            BTreeNode left = nodeManager.allocateNode();
+            BTreeNode left = allocate(false, path);
             left.copyChildren(node, 0, mid);
 
-            BTreeNode right = nodeManager.allocateNode();
+            BTreeNode right = allocate(false, path);
             right.copyChildren(node, mid + 1, node.numKeys());
 
             nodeManager.writeNode(left.id(), left);
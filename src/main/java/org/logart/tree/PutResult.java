@@ -2,10 +2,9 @@ package org.logart.tree;
 
 import org.logart.node.BTreeNode;
 
-import java.util.Set;
-
 public record PutResult(
         BTreeNode nodeCopy,
-        Set<Long> oldNodes
+        // nodes replaced and allocated by this put, reused by the next put on the same thread
+        PathStack path
 ) {
 }
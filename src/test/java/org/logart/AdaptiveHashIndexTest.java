@@ -0,0 +1,166 @@
+package org.logart;
+
+import org.junit.jupiter.api.Test;
+import org.logart.node.BTreeNode;
+import org.logart.node.DefaultNodeManager;
+import org.logart.page.memory.MapBasedPageManager;
+import org.logart.page.mmap.MMAPBasedPageManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveHashIndexTest {
+
+    @Test
+    void shouldReadHotKeysWithoutInternalLevels() {
+        AtomicLong reads = new AtomicLong();
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MapBasedPageManager()) {
+            @Override
+            public BTreeNode readNode(long nodeId) {
+                reads.incrementAndGet();
+                return super.readNode(nodeId);
+            }
+        };
+        BPlusTree tree = new DefaultBPlusTree(nodeManager, null, null, new AdaptiveHashIndex(64));
+        for (int i = 0; i < 1_000; i++) {
+            tree.put(key(i), value(i));
+        }
+        reads.set(0);
+        tree.get(key(7));
+        long descent = reads.get();
+        for (int i = 0; i < 3; i++) {
+            tree.get(key(7));
+        }
+
+        reads.set(0);
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(value(7), tree.get(key(7)));
+        }
+        assertTrue(descent > 2, "Tree should have internal levels, descent read " + descent + " nodes");
+        assertEquals(100, reads.get(), "Indexed key should read only its leaf");
+        assertNull(tree.get(key(1_000)));
+    }
+
+    @Test
+    void shouldNotUseEntriesOfReplacedLeaves() {
+        BPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(new MapBasedPageManager()), null, null, new AdaptiveHashIndex(64));
+        for (int i = 0; i < 100; i++) {
+            tree.put(key(i), value(i));
+        }
+        warm(tree, 1, 2, 3, 50, 70);
+
+        tree.put(key(1), value(-1));
+        tree.delete(key(2));
+        tree.deleteRange(key(40), key(60));
+        // neighbour of an indexed key is written, its leaf is copied
+        tree.put(key(71), value(-71));
+
+        assertArrayEquals(value(-1), tree.get(key(1)));
+        assertNull(tree.get(key(2)));
+        assertArrayEquals(value(3), tree.get(key(3)));
+        assertNull(tree.get(key(50)));
+        assertArrayEquals(value(70), tree.get(key(70)));
+        assertArrayEquals(value(-71), tree.get(key(71)));
+    }
+
+    @Test
+    void shouldMatchModelWhenPagesAreReused() throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-hash-index-test", ".db");
+        BPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(new MMAPBasedPageManager(tempFile.toFile(), 4096)),
+                null, null, new AdaptiveHashIndex(256));
+        try {
+            Map<Integer, byte[]> model = new HashMap<>();
+            Random random = new Random(42);
+            for (int op = 0; op < 50_000; op++) {
+                // a small hot set is read over and over while the whole key space is written
+                int id = random.nextInt(4) == 0 ? random.nextInt(5_000) : random.nextInt(50);
+                switch (random.nextInt(8)) {
+                    case 0 -> {
+                        byte[] value = value(op);
+                        tree.put(key(id), value);
+                        model.put(id, value);
+                    }
+                    case 1 -> {
+                        tree.delete(key(id));
+                        model.remove(id);
+                    }
+                    default -> assertArrayEquals(model.get(id), tree.get(key(id)), "Wrong value of key " + id + " at " + op);
+                }
+            }
+        } finally {
+            tree.close();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Test
+    void shouldNotUseEntryOfReplacedLeafAfterItsPageIsReused() throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-hash-index-test", ".db");
+        AtomicLong reads = new AtomicLong();
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MMAPBasedPageManager(tempFile.toFile(), 4096)) {
+            @Override
+            public BTreeNode readNode(long nodeId) {
+                reads.incrementAndGet();
+                return super.readNode(nodeId);
+            }
+        };
+        BPlusTree tree = new DefaultBPlusTree(nodeManager, null, null, new AdaptiveHashIndex(64));
+        try {
+            for (int i = 0; i < 1_000; i++) {
+                tree.put(key(i), value(i));
+            }
+            warm(tree, 7);
+            long indexedLeaf = leafOf(nodeManager, key(7));
+
+            // every update copies the leaf of the key, freed pages are handed out again
+            int version = 0;
+            do {
+                tree.put(key(7), value(-++version));
+            } while (leafOf(nodeManager, key(7)) != indexedLeaf && version < 100);
+            assertEquals(indexedLeaf, leafOf(nodeManager, key(7)), "Page of the indexed leaf should be reused");
+
+            // the reused page holds the key in the same slot, only the stamp tells the entry is stale
+            reads.set(0);
+            assertArrayEquals(value(-version), tree.get(key(7)));
+            assertTrue(reads.get() > 1, "Entry of the replaced leaf should not be used, read " + reads.get() + " nodes");
+        } finally {
+            tree.close();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static long leafOf(DefaultNodeManager nodeManager, byte[] key) {
+        Versioned<BTreeNode> root = nodeManager.lockVersion();
+        try {
+            BTreeNode node = root.get();
+            while (!node.isLeaf()) {
+                node = nodeManager.readNode(node.findChild(key));
+            }
+            return node.id();
+        } finally {
+            nodeManager.releaseVersion(root);
+        }
+    }
+
+    private static void warm(BPlusTree tree, int... ids) {
+        for (int i = 0; i < 3; i++) {
+            for (int id : ids) {
+                tree.get(key(id));
+            }
+        }
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%06d", i).getBytes();
+    }
+
+    private static byte[] value(int i) {
+        return ("value-" + i).getBytes();
+    }
+}
@@ -0,0 +1,122 @@
+package org.logart;
+
+import org.junit.jupiter.api.Test;
+import org.logart.node.BTreeNode;
+import org.logart.node.DefaultNodeManager;
+import org.logart.page.memory.MapBasedPageManager;
+import org.logart.page.mmap.MMAPBasedPageManager;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AllocationRegressionTest {
+    private static final int KEYS = 500;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void getShouldNotAllocateInSteadyState() {
+        BPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(new MapBasedPageManager()));
+        byte[][] keys = fill(tree);
+
+        // in memory pages return stored values, so anything allocated here is traversal overhead
+        double perCall = allocatedPerGet(tree, keys);
+        assertTrue(perCall < 1.0, "Get allocates " + perCall + " bytes per call");
+    }
+
+    @Test
+    void getFromMmapPagesShouldAllocateOnlyTheValue() throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-allocation-test", ".db");
+        try {
+            BPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(new MMAPBasedPageManager(tempFile.toFile(), 4096)));
+            byte[][] keys = fill(tree);
+
+            // the value is copied out of the page, "value-NNN" takes a 32 byte array, pages are read in place
+            double perCall = allocatedPerGet(tree, keys);
+            assertTrue(perCall < 33.0, "Get allocates " + perCall + " bytes per call");
+            tree.close();
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Test
+    void putShouldAllocateOnlyCopiesOfReplacedPagesInSteadyState() {
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MapBasedPageManager());
+        BPlusTree tree = new DefaultBPlusTree(nodeManager);
+        byte[][] keys = fill(tree);
+        byte[] value = "updated".getBytes();
+        // updates keep the shape of the tree, every put replaces the pages on the path of its key
+        for (int i = 0; i < 200_000; i++) {
+            tree.put(keys[i % KEYS], value);
+        }
+        double pathLength = averagePathLength(nodeManager, keys);
+
+        long threadId = Thread.currentThread().threadId();
+        int puts = 50_000;
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < puts; i++) {
+            tree.put(keys[i % KEYS], value);
+        }
+        double perPage = (THREADS.getThreadAllocatedBytes(threadId) - before) / (double) puts / pathLength;
+
+        // per replaced page: the in memory copy with its key, value and child arrays (about 260 bytes),
+        // node wrapper and boxed ids of the node and page maps (about 200), reclaimer entry in the
+        // retired set and boxed ids of the batch free (about 150), the path and ids themselves are not boxed
+        assertTrue(perPage < 800, "Put allocates " + perPage + " bytes per replaced page");
+    }
+
+    private static byte[][] fill(BPlusTree tree) {
+        assertTrue(THREADS.isThreadAllocatedMemorySupported(), "JVM does not report allocated memory");
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            ids.add(i);
+        }
+        Collections.shuffle(ids, new Random(42));
+        byte[][] keys = new byte[KEYS][];
+        for (int i : ids) {
+            keys[i] = String.format("key-%05d", i).getBytes();
+            tree.put(keys[i], ("value-" + i).getBytes());
+        }
+        return keys;
+    }
+
+    private static double allocatedPerGet(BPlusTree tree, byte[][] keys) {
+        // let JIT compile the read path first
+        for (int i = 0; i < 200_000; i++) {
+            assertNotNull(tree.get(keys[i % KEYS]));
+        }
+        long threadId = Thread.currentThread().threadId();
+        int reads = 100_000;
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < reads; i++) {
+            tree.get(keys[i % KEYS]);
+        }
+        return (THREADS.getThreadAllocatedBytes(threadId) - before) / (double) reads;
+    }
+
+    private static double averagePathLength(DefaultNodeManager nodeManager, byte[][] keys) {
+        Versioned<BTreeNode> root = nodeManager.lockVersion();
+        try {
+            long pages = 0;
+            for (byte[] key : keys) {
+                BTreeNode node = root.get();
+                pages++;
+                while (!node.isLeaf()) {
+                    node = nodeManager.readNode(node.findChild(key));
+                    pages++;
+                }
+            }
+            return pages / (double) keys.length;
+        } finally {
+            nodeManager.releaseVersion(root);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.logart;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.logart.node.BTreeNode;
+import org.logart.node.DefaultNodeManager;
+import org.logart.page.memory.MapBasedPageManager;
+import org.logart.page.mmap.MMAPBasedPageManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BPlusTreeDeleteTest {
+    private DefaultBPlusTree tree;
+    private Path tempFile;
+
+    @BeforeEach
+    void setup() throws Exception {
+        tempFile = Files.createTempFile("bplustree-delete-test", ".db");
+        tree = new DefaultBPlusTree(new DefaultNodeManager(new MMAPBasedPageManager(tempFile.toFile(), 4096)));
+    }
+
+    @AfterEach
+    void teardown() throws Exception {
+        tree.close();
+        Files.deleteIfExists(tempFile);
+    }
+
+    @Test
+    void shouldDeleteSingleKey() {
+        tree.put("key1".getBytes(), "value1".getBytes());
+        tree.put("key2".getBytes(), "value2".getBytes());
+
+        tree.delete("key1".getBytes());
+
+        assertNull(tree.get("key1".getBytes()));
+        assertArrayEquals("value2".getBytes(), tree.get("key2".getBytes()));
+    }
+
+    @Test
+    void shouldIgnoreMissingKey() {
+        tree.put("key1".getBytes(), "value1".getBytes());
+        List<Long> before = tree.collectReachablePageIds();
+
+        tree.delete("missing".getBytes());
+
+        assertEquals(before, tree.collectReachablePageIds(), "Nothing was deleted, root should not change");
+        assertArrayEquals("value1".getBytes(), tree.get("key1".getBytes()));
+    }
+
+    @Test
+    void shouldMergeUnderfullPages() {
+        for (int i = 0; i < 800; i++) {
+            tree.put(key(i), value(i));
+        }
+        int pagesBefore = tree.collectReachablePageIds().size();
+        for (int i = 0; i < 800; i++) {
+            if (i % 4 != 0) {
+                tree.delete(key(i));
+            }
+        }
+        for (int i = 0; i < 800; i++) {
+            if (i % 4 != 0) {
+                assertNull(tree.get(key(i)), "Key " + i + " should be deleted");
+            } else {
+                assertArrayEquals(value(i), tree.get(key(i)), "Key " + i + " should be kept");
+            }
+        }
+        int pagesAfter = tree.collectReachablePageIds().size();
+        assertTrue(pagesAfter < pagesBefore, "Underfull pages should be merged, before: " + pagesBefore + " after: " + pagesAfter);
+    }
+
+    @Test
+    void shouldDeleteAllKeysAndReuseTree() {
+        for (int i = 0; i < 500; i++) {
+            tree.put(key(i), value(i));
+        }
+        for (int i = 0; i < 500; i++) {
+            tree.delete(key(i));
+            assertNull(tree.get(key(i)));
+        }
+        assertEquals(1, tree.collectReachablePageIds().size(), "Only an empty root should be left");
+
+        tree.put(key(1), value(1));
+        assertArrayEquals(value(1), tree.get(key(1)));
+    }
+
+    @Test
+    void shouldDeleteRange() {
+        for (int i = 0; i < 800; i++) {
+            tree.put(key(i), value(i));
+        }
+        int pagesBefore = tree.collectReachablePageIds().size();
+
+        tree.deleteRange(key(100), key(700));
+
+        for (int i = 0; i < 800; i++) {
+            if (i >= 100 && i < 700) {
+                assertNull(tree.get(key(i)), "Key " + i + " should be deleted");
+            } else {
+                assertArrayEquals(value(i), tree.get(key(i)), "Key " + i + " should be kept");
+            }
+        }
+        assertTrue(tree.collectReachablePageIds().size() < pagesBefore);
+    }
+
+    @Test
+    void shouldDeleteRangeFromTheBeginningAndTheEnd() {
+        for (int i = 0; i < 1_000; i++) {
+            tree.put(key(i), value(i));
+        }
+
+        tree.deleteRange(new byte[0], key(300));
+        tree.deleteRange(key(700), key(1_000));
+
+        for (int i = 0; i < 1_000; i++) {
+            if (i >= 300 && i < 700) {
+                assertArrayEquals(value(i), tree.get(key(i)), "Key " + i + " should be kept");
+            } else {
+                assertNull(tree.get(key(i)), "Key " + i + " should be deleted");
+            }
+        }
+    }
+
+    @Test
+    void shouldNotLeakPagesOnDelete() {
+        MapBasedPageManager pageManager = new MapBasedPageManager();
+        DefaultBPlusTree inMemoryTree = new DefaultBPlusTree(new DefaultNodeManager(pageManager));
+        for (int i = 0; i < 300; i++) {
+            inMemoryTree.put(key(i), value(i));
+        }
+        inMemoryTree.deleteRange(key(50), key(250));
+        assertNoLeak(inMemoryTree, pageManager);
+        for (int i = 0; i < 300; i += 3) {
+            inMemoryTree.delete(key(i));
+            assertNoLeak(inMemoryTree, pageManager);
+        }
+        for (int i = 0; i < 300; i++) {
+            boolean deleted = (i >= 50 && i < 250) || i % 3 == 0;
+            if (deleted) {
+                assertNull(inMemoryTree.get(key(i)), "Key " + i + " should be deleted");
+            } else {
+                assertArrayEquals(value(i), inMemoryTree.get(key(i)), "Key " + i + " should be kept");
+            }
+        }
+    }
+
+    @Test
+    void shouldNotReadLeavesOfDeletedSubtrees() {
+        MapBasedPageManager pageManager = new MapBasedPageManager();
+        AtomicBoolean counting = new AtomicBoolean();
+        Set<Long> leavesRead = new HashSet<>();
+        DefaultBPlusTree inMemoryTree = new DefaultBPlusTree(new DefaultNodeManager(pageManager) {
+            @Override
+            public BTreeNode readNode(long nodeId) {
+                BTreeNode node = super.readNode(nodeId);
+                if (counting.get() && node.isLeaf()) {
+                    leavesRead.add(nodeId);
+                }
+                return node;
+            }
+        });
+        for (int i = 0; i < 300; i++) {
+            inMemoryTree.put(key(i), value(i));
+        }
+
+        counting.set(true);
+        inMemoryTree.deleteRange(key(20), key(280));
+        counting.set(false);
+
+        // leaves at both ends of the range and their siblings, not the ones in between
+        assertTrue(leavesRead.size() <= 6, "Leaves read: " + leavesRead.size());
+        assertNoLeak(inMemoryTree, pageManager);
+        for (int i = 0; i < 300; i++) {
+            if (i >= 20 && i < 280) {
+                assertNull(inMemoryTree.get(key(i)), "Key " + i + " should be deleted");
+            } else {
+                assertArrayEquals(value(i), inMemoryTree.get(key(i)), "Key " + i + " should be kept");
+            }
+        }
+    }
+
+    private static void assertNoLeak(DefaultBPlusTree tree, MapBasedPageManager pageManager) {
+        List<Long> reachable = tree.collectReachablePageIds();
+        assertEquals(reachable.size(), Set.copyOf(reachable).size(), "Page is referenced twice");
+
+        Set<Long> leaked = new HashSet<>(pageManager.getAllAllocatedPageIds());
+        leaked.removeAll(reachable);
+        assertTrue(leaked.isEmpty(), "There are leaked pages: " + leaked);
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%05d", i).getBytes();
+    }
+
+    private static byte[] value(int i) {
+        return ("value-" + i).getBytes();
+    }
+}
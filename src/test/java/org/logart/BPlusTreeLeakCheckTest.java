@@ -1,13 +1,16 @@
 package org.logart;
 
 import org.junit.jupiter.api.Test;
+import org.logart.node.BTreeNode;
 import org.logart.node.DefaultNodeManager;
 import org.logart.node.NodeManager;
 import org.logart.page.memory.MapBasedPageManager;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class BPlusTreeLeakCheckTest {
@@ -36,6 +39,42 @@ public class BPlusTreeLeakCheckTest {
         assertNoLeak((DefaultBPlusTree) tree, pageManager);
     }
 
+    @Test
+    public void testNoLeakedPagesAfterFailedCommit() {
+        MapBasedPageManager pageManager = new MapBasedPageManager();
+        AtomicInteger failedCommits = new AtomicInteger();
+        NodeManager nodeManager = new DefaultNodeManager(pageManager) {
+            private boolean fail = true;
+
+            @Override
+            public boolean advanceVersion(Versioned<BTreeNode> currentVersionedRoot, BTreeNode newRoot) {
+                // every other commit loses the race to a concurrent writer
+                fail = !fail;
+                if (!fail) {
+                    failedCommits.incrementAndGet();
+                    return false;
+                }
+                return super.advanceVersion(currentVersionedRoot, newRoot);
+            }
+        };
+        DefaultBPlusTree tree = new DefaultBPlusTree(nodeManager);
+
+        for (int i = 0; i < 100; i++) {
+            tree.put(("key" + i).getBytes(), ("value" + i).getBytes());
+            assertNoLeak(tree, pageManager);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            tree.delete(("key" + i).getBytes());
+            assertNoLeak(tree, pageManager);
+        }
+        for (int i = 1; i < 100; i += 2) {
+            assertArrayEquals(("value" + i).getBytes(), tree.get(("key" + i).getBytes()));
+        }
+        assertTrue(failedCommits.get() > 0);
+        assertTrue(nodeManager.discardedNodeCount() >= failedCommits.get(),
+                "Every failed commit allocates at least one node, discarded: " + nodeManager.discardedNodeCount());
+    }
+
     private static void assertNoLeak(DefaultBPlusTree tree, MapBasedPageManager pageManager) {
         // Gather IDs from a live tree
         Set<Long> reachablePages = Set.copyOf(tree.collectReachablePageIds());
@@ -0,0 +1,107 @@
+package org.logart;
+
+import org.junit.jupiter.api.Test;
+import org.logart.node.BTreeNode;
+import org.logart.node.DefaultNodeManager;
+import org.logart.page.memory.MapBasedPageManager;
+import org.logart.page.mmap.MMAPBasedPageManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BPlusTreeMultiGetTest {
+    @Test
+    void shouldReturnValuesInInputOrder() throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-multiget-test", ".db");
+        DefaultBPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(new MMAPBasedPageManager(tempFile.toFile(), 4096)));
+        try {
+            for (int i = 0; i < 2_000; i += 2) {
+                tree.put(key(i), value(i));
+            }
+            List<byte[]> keys = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                keys.add(key(i));
+            }
+            keys.add(key(10)); // duplicate
+            Collections.shuffle(keys, new Random(42));
+
+            List<byte[]> values = tree.multiGet(keys);
+
+            assertEquals(keys.size(), values.size());
+            for (int i = 0; i < keys.size(); i++) {
+                int k = Integer.parseInt(new String(keys.get(i)).substring(4));
+                if (k % 2 == 0) {
+                    assertArrayEquals(value(k), values.get(i), "Wrong value for key " + k);
+                } else {
+                    assertNull(values.get(i), "Key " + k + " was never put");
+                }
+            }
+        } finally {
+            tree.close();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Test
+    void shouldHandleEmptyBatchAndEmptyTree() {
+        DefaultBPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(new MapBasedPageManager()));
+        assertTrue(tree.multiGet(List.of()).isEmpty());
+        List<byte[]> values = tree.multiGet(List.of(key(1), key(2)));
+        assertEquals(2, values.size());
+        assertNull(values.get(0));
+        assertNull(values.get(1));
+    }
+
+    @Test
+    void shouldVisitSharedPagesOnce() {
+        AtomicLong reads = new AtomicLong();
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MapBasedPageManager()) {
+            @Override
+            public BTreeNode readNode(long nodeId) {
+                reads.incrementAndGet();
+                return super.readNode(nodeId);
+            }
+        };
+        DefaultBPlusTree tree = new DefaultBPlusTree(nodeManager);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            ids.add(i);
+        }
+        Collections.shuffle(ids, new Random(42));
+        List<byte[]> keys = new ArrayList<>();
+        for (int i : ids) {
+            tree.put(key(i), value(i));
+            if (i % 4 == 0) {
+                keys.add(key(i));
+            }
+        }
+
+        reads.set(0);
+        for (byte[] key : keys) {
+            tree.get(key);
+        }
+        long singleGetReads = reads.get();
+
+        reads.set(0);
+        tree.multiGet(keys);
+        long multiGetReads = reads.get();
+
+        assertTrue(multiGetReads * 2 < singleGetReads,
+                "Batched lookup should read fewer pages, single: " + singleGetReads + " batched: " + multiGetReads);
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%05d", i).getBytes();
+    }
+
+    private static byte[] value(int i) {
+        return ("value-" + i).getBytes();
+    }
+}
@@ -2,10 +2,15 @@ package org.logart;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.logart.node.BTreeNode;
 import org.logart.node.DefaultNodeManager;
 import org.logart.page.memory.MapBasedPageManager;
+import org.logart.page.mmap.MMAPBasedPageManager;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +37,72 @@ public class BPlusTreeSplitTest {
         assertArrayEquals("C".getBytes(), tree.get("30".getBytes()));
     }
 
+    @Test
+    void testUpdatesDoNotSplitPages() throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-update-test", ".db");
+        AtomicInteger internalNodes = new AtomicInteger();
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MMAPBasedPageManager(tempFile.toFile(), 4096)) {
+            @Override
+            public BTreeNode allocateNode() {
+                internalNodes.incrementAndGet();
+                return super.allocateNode();
+            }
+        };
+        BPlusTree counters = new DefaultBPlusTree(nodeManager);
+        try {
+            // hot counters, the live data fits a single leaf many times over
+            for (int i = 0; i < 5_000; i++) {
+                counters.put(("counter-" + i % 20).getBytes(), String.valueOf(i).getBytes());
+            }
+            assertEquals(0, internalNodes.get(), "Updates should not split the leaf");
+            assertArrayEquals("4999".getBytes(), counters.get("counter-19".getBytes()));
+        } finally {
+            counters.close();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Test
+    void testSequentialInsertsFillLeaves() throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-append-test", ".db");
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MMAPBasedPageManager(tempFile.toFile(), 4096));
+        BPlusTree log = new DefaultBPlusTree(nodeManager);
+        try {
+            int keys = 10_000;
+            for (int i = 0; i < keys; i++) {
+                log.put(String.format("ts-%012d", i).getBytes(), String.format("event-%014d", i).getBytes());
+            }
+            for (int i = 0; i < keys; i += 97) {
+                assertArrayEquals(String.format("event-%014d", i).getBytes(), log.get(String.format("ts-%012d", i).getBytes()));
+            }
+
+            Versioned<BTreeNode> root = nodeManager.lockVersion();
+            int leaves;
+            try {
+                leaves = countLeaves(nodeManager, root.get());
+            } finally {
+                nodeManager.releaseVersion(root);
+            }
+            // 15 byte key, 20 byte value, 4 bytes of lengths and a 2 byte slot
+            int perFullLeaf = (4096 - 32) / 41;
+            assertTrue(leaves <= keys / perFullLeaf + 2, "Sequential inserts should leave full leaves, got " + leaves + " leaves");
+        } finally {
+            log.close();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static int countLeaves(DefaultNodeManager nodeManager, BTreeNode node) {
+        if (node.isLeaf()) {
+            return 1;
+        }
+        int leaves = 0;
+        for (int i = 0; i <= node.numKeys(); i++) {
+            leaves += countLeaves(nodeManager, nodeManager.readNode(node.child(i)));
+        }
+        return leaves;
+    }
+
     @Test
     void testSplitLeafNode() {
         tree.put("10".getBytes(), "A".getBytes());
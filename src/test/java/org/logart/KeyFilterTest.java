@@ -0,0 +1,159 @@
+package org.logart;
+
+import org.junit.jupiter.api.Test;
+import org.logart.node.BTreeNode;
+import org.logart.node.DefaultNodeManager;
+import org.logart.page.memory.MapBasedPageManager;
+import org.logart.page.mmap.MMAPBasedPageManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyFilterTest {
+
+    @Test
+    void shouldHaveNoFalseNegativesAndFewFalsePositives() {
+        KeyFilter filter = KeyFilter.inMemory(10_000, 10);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(key(i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain(key(i)), "Added key " + i + " is missing");
+            if (filter.mightContain(key(10_000 + i))) {
+                falsePositives++;
+            }
+        }
+        // about 1% for 10 bits per key, blocking costs a bit more
+        assertTrue(falsePositives < 300, falsePositives + " false positives of 10000");
+    }
+
+    @Test
+    void shouldSkipDescentForMissingKeys() {
+        AtomicLong reads = new AtomicLong();
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MapBasedPageManager()) {
+            @Override
+            public BTreeNode readNode(long nodeId) {
+                reads.incrementAndGet();
+                return super.readNode(nodeId);
+            }
+        };
+        BPlusTree tree = new DefaultBPlusTree(nodeManager, KeyFilter.inMemory(1_000, 10));
+        for (int i = 0; i < 1_000; i++) {
+            tree.put(key(i), value(i));
+        }
+
+        reads.set(0);
+        int found = 0;
+        for (int i = 1_000; i < 2_000; i++) {
+            if (tree.get(key(i)) != null || tree.get(key(i), view -> view) != null) {
+                found++;
+            }
+        }
+        assertEquals(0, found);
+        assertTrue(reads.get() < 200, "Misses read " + reads.get() + " nodes");
+        for (int i = 0; i < 1_000; i++) {
+            assertArrayEquals(value(i), tree.get(key(i)));
+        }
+    }
+
+    @Test
+    void shouldGrowWhenMoreKeysThanExpectedAreAdded() {
+        KeyFilter filter = KeyFilter.inMemory(100, 10);
+        BPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(new MapBasedPageManager()), filter);
+        for (int i = 0; i < 2_000; i++) {
+            tree.put(key(i), value(i));
+        }
+        tree.delete(key(5));
+
+        assertTrue(filter.capacity() >= 2_000, "Filter capacity " + filter.capacity());
+        for (int i = 0; i < 2_000; i++) {
+            if (i == 5) {
+                assertNull(tree.get(key(i)));
+            } else {
+                assertArrayEquals(value(i), tree.get(key(i)));
+            }
+        }
+    }
+
+    @Test
+    void shouldNotGrowOnUpdatesAndDeletes() {
+        KeyFilter filter = KeyFilter.inMemory(500, 10);
+        BPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(new MapBasedPageManager()), filter);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 400; i++) {
+                tree.put(key(i), value(round));
+            }
+        }
+        assertEquals(500, filter.capacity(), "Updates should not count as new keys");
+
+        // keys come and go, the tree never holds more than 400 of them
+        for (int i = 400; i < 2_000; i++) {
+            tree.put(key(i), value(i));
+            tree.delete(key(i - 400));
+        }
+        assertEquals(500, filter.capacity(), "Rebuilds should keep the capacity while the tree holds fewer keys");
+        for (int i = 1_600; i < 2_000; i++) {
+            assertArrayEquals(value(i), tree.get(key(i)));
+        }
+        assertNull(tree.get(key(0)));
+    }
+
+    @Test
+    void shouldReloadSavedFilterOnlyIfTreeDidNotChange() throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-filter-test", ".db");
+        Path filterFile = Path.of(tempFile + ".filter");
+        try {
+            BPlusTree tree = open(tempFile, filterFile);
+            for (int i = 0; i < 3_000; i++) {
+                tree.put(key(i), value(i));
+            }
+            tree.close();
+            assertTrue(Files.exists(filterFile), "Filter should be saved on close");
+            byte[] stale = Files.readAllBytes(filterFile);
+
+            BPlusTree reopened = open(tempFile, filterFile);
+            reopened.load();
+            assertFalse(Files.exists(filterFile), "Loaded filter file should be removed until the next close");
+            for (int i = 0; i < 3_000; i++) {
+                assertArrayEquals(value(i), reopened.get(key(i)));
+            }
+            reopened.put(key(3_000), value(3_000));
+            reopened.close();
+
+            // filter saved for an older root misses the last key, it has to be rebuilt
+            Files.write(filterFile, stale);
+            BPlusTree afterStale = open(tempFile, filterFile);
+            afterStale.load();
+            assertArrayEquals(value(3_000), afterStale.get(key(3_000)));
+            afterStale.close();
+
+            Files.write(filterFile, new byte[]{1, 2, 3});
+            BPlusTree afterCorrupt = open(tempFile, filterFile);
+            afterCorrupt.load();
+            for (int i = 0; i <= 3_000; i++) {
+                assertArrayEquals(value(i), afterCorrupt.get(key(i)));
+            }
+            afterCorrupt.close();
+        } finally {
+            Files.deleteIfExists(tempFile);
+            Files.deleteIfExists(filterFile);
+        }
+    }
+
+    private static BPlusTree open(Path file, Path filterFile) throws Exception {
+        return new DefaultBPlusTree(new DefaultNodeManager(new MMAPBasedPageManager(file.toFile(), 4096)),
+                KeyFilter.persistent(filterFile, 5_000, 10));
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%06d", i).getBytes();
+    }
+
+    private static byte[] value(int i) {
+        return ("value-" + i).getBytes();
+    }
+}
@@ -0,0 +1,118 @@
+package org.logart;
+
+import org.junit.jupiter.api.Test;
+import org.logart.node.DefaultNodeManager;
+import org.logart.page.memory.MapBasedPageManager;
+import org.logart.page.mmap.KeySearch;
+import org.logart.page.mmap.MMAPBasedPageManager;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.logart.page.mmap.AbstractPage.PAGE_SIZE;
+
+public class LongBPlusTreeTest {
+
+    @Test
+    void shouldKeepSignedOrderOfEncodedKeys() {
+        long[] keys = {Long.MIN_VALUE, -1_000_000L, -1L, 0L, 1L, 255L, 256L, 1_000_000L, Long.MAX_VALUE};
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(keys[i], LongBPlusTree.decode(LongBPlusTree.encode(keys[i])));
+            if (i > 0) {
+                assertTrue(Arrays.compareUnsigned(LongBPlusTree.encode(keys[i - 1]), LongBPlusTree.encode(keys[i])) < 0,
+                        keys[i - 1] + " should be stored before " + keys[i]);
+            }
+        }
+    }
+
+    @Test
+    void shouldPutAndGetLongs() {
+        LongBPlusTree tree = new LongBPlusTree(new DefaultNodeManager(new MapBasedPageManager()));
+        List<Long> keys = shuffledKeys(1_000);
+        for (long key : keys) {
+            tree.putLong(key, key * 3);
+        }
+        tree.put(7, "record".getBytes());
+        tree.putLong(-3, 42);
+
+        for (long key : keys) {
+            long expected = key == -3 ? 42 : key * 3;
+            if (key != 7) {
+                assertEquals(expected, tree.getLong(key, -1), "Wrong value for key " + key);
+            }
+        }
+        assertArrayEquals("record".getBytes(), tree.get(7));
+        assertThrows(IllegalStateException.class, () -> tree.getLong(7, -1));
+        assertEquals(-1, tree.getLong(10_000, -1));
+        assertNull(tree.get(10_000));
+    }
+
+    @Test
+    void shouldDeleteRangeAcrossZero() {
+        LongBPlusTree tree = new LongBPlusTree(new DefaultNodeManager(new MapBasedPageManager()));
+        for (long key : shuffledKeys(1_000)) {
+            tree.putLong(key, key);
+        }
+        tree.deleteRange(-100, 100);
+        tree.delete(300);
+
+        for (long key = -500; key < 500; key++) {
+            boolean deleted = (key >= -100 && key < 100) || key == 300;
+            assertEquals(deleted ? Long.MIN_VALUE : key, tree.getLong(key, Long.MIN_VALUE), "Wrong value for key " + key);
+        }
+    }
+
+    @Test
+    void getLongShouldNotAllocateOnFileTree() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported(), "JVM does not report allocated memory");
+
+        Path tempFile = Files.createTempFile("bplustree-long-test", ".db");
+        LongBPlusTree tree = new LongBPlusTree(new DefaultNodeManager(
+                new MMAPBasedPageManager(tempFile.toFile(), PAGE_SIZE, false, false, KeySearch.INTERPOLATION)));
+        try {
+            List<Long> keys = shuffledKeys(2_000);
+            for (long key : keys) {
+                tree.putLong(key, -key);
+            }
+            // let JIT compile the read path first
+            long sum = 0;
+            for (int i = 0; i < 200_000; i++) {
+                sum += tree.getLong(keys.get(i % keys.size()), 0);
+            }
+
+            long threadId = Thread.currentThread().threadId();
+            int reads = 100_000;
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < reads; i++) {
+                sum += tree.getLong(i % 1_000, 0);
+            }
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+            assertNotEquals(0, sum);
+            assertTrue(allocated / (double) reads < 1.0, "getLong allocates " + allocated / (double) reads + " bytes per call");
+            for (long key : keys) {
+                assertEquals(-key, tree.getLong(key, 0));
+            }
+        } finally {
+            tree.close();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static List<Long> shuffledKeys(int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long i = -count / 2; i < count / 2; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(42));
+        return keys;
+    }
+}
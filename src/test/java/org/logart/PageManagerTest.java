@@ -91,6 +91,30 @@ public class PageManagerTest {
         assertEquals(page.pageId(), reusedPage.pageId(), "Reused page id does not match freed page id");
     }
 
+    @Test
+    void testFreePagesInBatch() throws Exception {
+        long[] pageIds = new long[10];
+        for (int i = 0; i < pageIds.length; i++) {
+            pageIds[i] = pageManager.allocatePage().pageId();
+        }
+        // two contiguous ranges with a gap between
+        long[] freed = new long[]{pageIds[1], pageIds[2], pageIds[3], pageIds[6], pageIds[7]};
+        pageManager.freePages(freed);
+        // already freed pages are ignored
+        pageManager.freePages(new long[]{pageIds[1]});
+
+        Set<Long> freedIds = ((MMAPBasedPageManager) pageManager).getFreedNodeIds();
+        assertEquals(Set.of(pageIds[1], pageIds[2], pageIds[3], pageIds[6], pageIds[7]), freedIds);
+        assertThrows(IllegalStateException.class, () -> pageManager.readPage(pageIds[2]), "Page should be marked deleted");
+        assertNotNull(pageManager.readPage(pageIds[4]), "Page between ranges should stay");
+
+        // deleted flags survive reopening
+        pageManager.close();
+        pageManager = new MMAPBasedPageManager(tempFile, PAGE_SIZE);
+        pageManager.open();
+        assertEquals(Set.of(pageIds[1], pageIds[2], pageIds[3], pageIds[6], pageIds[7]), ((MMAPBasedPageManager) pageManager).getFreedNodeIds());
+    }
+
     @Test
     void testConcurrentFreeAndAllocatePages() throws Exception {
         int threadCount = 10;
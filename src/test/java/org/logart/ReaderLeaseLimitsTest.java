@@ -0,0 +1,90 @@
+package org.logart;
+
+import org.junit.jupiter.api.Test;
+import org.logart.node.DefaultNodeManager;
+import org.logart.node.ReaderLeaseLimits;
+import org.logart.page.memory.MapBasedPageManager;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReaderLeaseLimitsTest {
+    @Test
+    void shouldExpireOldSnapshot() throws Exception {
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MapBasedPageManager(), false,
+                new ReaderLeaseLimits(Duration.ofMillis(50), 0));
+        DefaultBPlusTree tree = new DefaultBPlusTree(nodeManager);
+        tree.put(key(1), key(1));
+
+        Snapshot snapshot = tree.snapshot();
+        assertArrayEquals(key(1), snapshot.get(key(1)));
+        Thread.sleep(100);
+
+        SnapshotExpiredException expired = assertThrows(SnapshotExpiredException.class, () -> snapshot.get(key(1)));
+        assertTrue(expired.getMessage().contains("expired"), expired.getMessage());
+        snapshot.close();
+
+        // tree is still usable after the snapshot is gone
+        tree.put(key(2), key(2));
+        assertArrayEquals(key(2), tree.get(key(2)));
+    }
+
+    @Test
+    void shouldRevokeOldestSnapshotWhenBacklogIsTooLarge() {
+        MapBasedPageManager pageManager = new MapBasedPageManager();
+        DefaultNodeManager nodeManager = new DefaultNodeManager(pageManager, false,
+                new ReaderLeaseLimits(Duration.ZERO, 10));
+        DefaultBPlusTree tree = new DefaultBPlusTree(nodeManager);
+        tree.put(key(0), key(0));
+
+        try (Snapshot snapshot = tree.snapshot()) {
+            for (int i = 1; i < 200; i++) {
+                tree.put(key(i), key(i));
+                assertTrue(nodeManager.reclaimBacklog() <= 10, "Backlog should be kept under the limit");
+            }
+            SnapshotExpiredException revoked = assertThrows(SnapshotExpiredException.class, () -> snapshot.get(key(0)));
+            assertTrue(revoked.getMessage().contains("revoked"), revoked.getMessage());
+            assertEquals(1, nodeManager.refCounter().revokedLeaseCount());
+        }
+        for (int i = 0; i < 200; i++) {
+            assertArrayEquals(key(i), tree.get(key(i)));
+        }
+        assertEquals(pageManager.getAllAllocatedPageIds().size(), tree.collectReachablePageIds().size(), "Retired pages should be freed");
+    }
+
+    @Test
+    void shouldReportOldestPinnedReader() throws Exception {
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MapBasedPageManager());
+        DefaultBPlusTree tree = new DefaultBPlusTree(nodeManager);
+        tree.put(key(0), key(0));
+        assertTrue(nodeManager.refCounter().oldestReader().isEmpty());
+
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread exporter = new Thread(() -> {
+            try (Snapshot snapshot = tree.snapshot()) {
+                opened.countDown();
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "stuck-export");
+        exporter.start();
+        opened.await();
+        tree.put(key(1), key(1));
+
+        VersionedRefCounter.PinnedReader oldest = nodeManager.refCounter().oldestReader().orElseThrow();
+        assertEquals("stuck-export", oldest.holder());
+        assertEquals(1, oldest.version());
+
+        done.countDown();
+        exporter.join();
+        assertTrue(nodeManager.refCounter().oldestReader().isEmpty());
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%05d", i).getBytes();
+    }
+}
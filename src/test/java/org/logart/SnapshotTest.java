@@ -0,0 +1,130 @@
+package org.logart;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.logart.node.DefaultNodeManager;
+import org.logart.page.memory.MapBasedPageManager;
+import org.logart.page.mmap.MMAPBasedPageManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotTest {
+    private BPlusTree tree;
+
+    @BeforeEach
+    void setUp() {
+        tree = new DefaultBPlusTree(new DefaultNodeManager(new MapBasedPageManager()));
+    }
+
+    @Test
+    void shouldReadPinnedVersion() {
+        for (int i = 0; i < 500; i++) {
+            tree.put(key(i), value(i));
+        }
+        try (Snapshot snapshot = tree.snapshot()) {
+            for (int i = 0; i < 500; i++) {
+                tree.put(key(i), "changed".getBytes());
+            }
+            tree.deleteRange(key(100), key(200));
+
+            for (int i = 0; i < 500; i++) {
+                assertArrayEquals(value(i), snapshot.get(key(i)), "Snapshot should not see later writes, key " + i);
+            }
+        }
+        assertArrayEquals("changed".getBytes(), tree.get(key(1)));
+        assertNull(tree.get(key(150)));
+    }
+
+    @Test
+    void shouldReturnValuesInKeysOrder() {
+        for (int i = 0; i < 300; i++) {
+            tree.put(key(i), value(i));
+        }
+        try (Snapshot snapshot = tree.snapshot()) {
+            List<byte[]> values = snapshot.multiGet(List.of(key(250), key(3), "missing".getBytes(), key(120)));
+
+            assertEquals(4, values.size());
+            assertArrayEquals(value(250), values.get(0));
+            assertArrayEquals(value(3), values.get(1));
+            assertNull(values.get(2));
+            assertArrayEquals(value(120), values.get(3));
+        }
+    }
+
+    @Test
+    void shouldScanRangeInOrder() {
+        for (int i = 999; i >= 0; i--) {
+            tree.put(key(i), value(i));
+        }
+        try (Snapshot snapshot = tree.snapshot()) {
+            List<byte[]> keys = new ArrayList<>();
+            snapshot.scan(key(100), key(900), (key, value) -> {
+                assertArrayEquals(value(keys.size() + 100), value);
+                keys.add(key);
+            });
+            assertEquals(800, keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                assertArrayEquals(key(i + 100), keys.get(i));
+            }
+
+            List<byte[]> tail = new ArrayList<>();
+            snapshot.scan(key(990), null, (key, value) -> tail.add(key));
+            assertEquals(10, tail.size());
+        }
+    }
+
+    @Test
+    void shouldKeepViewsOfPinnedPagesWhileOpen() throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-snapshot-view-test", ".db");
+        BPlusTree mmapTree = new DefaultBPlusTree(new DefaultNodeManager(new MMAPBasedPageManager(tempFile.toFile(), 4096)));
+        try {
+            for (int i = 0; i < 500; i++) {
+                mmapTree.put(key(i), value(i));
+            }
+            assertEquals("value-42", mmapTree.get(key(42), view -> StandardCharsets.UTF_8.decode(view).toString()));
+            assertNull(mmapTree.get("missing".getBytes(), ByteBuffer::remaining));
+
+            try (Snapshot snapshot = mmapTree.snapshot()) {
+                List<ByteBuffer> views = new ArrayList<>();
+                for (int i = 0; i < 500; i++) {
+                    views.add(snapshot.getView(key(i)));
+                }
+                for (int i = 0; i < 500; i++) {
+                    mmapTree.put(key(i), "changed".getBytes());
+                }
+                for (int i = 0; i < 500; i++) {
+                    assertEquals("value-" + i, StandardCharsets.UTF_8.decode(views.get(i)).toString());
+                }
+                assertNull(snapshot.getView("missing".getBytes()));
+            }
+        } finally {
+            mmapTree.close();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Test
+    void shouldFailOnClosedSnapshot() {
+        tree.put(key(1), value(1));
+        Snapshot snapshot = tree.snapshot();
+        snapshot.close();
+        snapshot.close(); // second close is a no-op
+
+        assertThrows(IllegalStateException.class, () -> snapshot.get(key(1)));
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%05d", i).getBytes();
+    }
+
+    private static byte[] value(int i) {
+        return ("value-" + i).getBytes();
+    }
+}
@@ -0,0 +1,147 @@
+package org.logart;
+
+import org.junit.jupiter.api.Test;
+import org.logart.node.BTreeNode;
+import org.logart.node.DefaultNodeManager;
+import org.logart.page.memory.MapBasedPageManager;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValueCacheTest {
+
+    @Test
+    void shouldServeHotKeysWithoutDescent() {
+        AtomicLong reads = new AtomicLong();
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MapBasedPageManager()) {
+            @Override
+            public BTreeNode readNode(long nodeId) {
+                reads.incrementAndGet();
+                return super.readNode(nodeId);
+            }
+        };
+        BPlusTree tree = new DefaultBPlusTree(nodeManager, null, new ValueCache(64));
+        for (int i = 0; i < 1_000; i++) {
+            tree.put(key(i), value(i));
+        }
+        for (int i = 0; i < 3; i++) {
+            tree.get(key(7));
+        }
+
+        reads.set(0);
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(value(7), tree.get(key(7)));
+        }
+        assertEquals(0, reads.get(), "Cached key should not be read from the tree");
+
+        byte[] returned = tree.get(key(7));
+        returned[0] = 'X';
+        assertArrayEquals(value(7), tree.get(key(7)), "Cached value should not be shared with callers");
+    }
+
+    @Test
+    void shouldNotReturnValuesChangedByWrites() {
+        BPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(new MapBasedPageManager()), null, new ValueCache(64));
+        for (int i = 0; i < 100; i++) {
+            tree.put(key(i), value(i));
+        }
+        warm(tree, 1, 2, 3, 50);
+
+        tree.put(key(1), value(-1));
+        tree.delete(key(2));
+        tree.deleteRange(key(40), key(60));
+
+        assertArrayEquals(value(-1), tree.get(key(1)));
+        assertNull(tree.get(key(2)));
+        assertArrayEquals(value(3), tree.get(key(3)));
+        assertNull(tree.get(key(50)));
+        warm(tree, 1, 3);
+        assertArrayEquals(value(-1), tree.get(key(1)));
+        assertArrayEquals(value(3), tree.get(key(3)));
+    }
+
+    @Test
+    void shouldKeepHotKeysWhenOneOffKeysAreRead() {
+        ValueCache cache = new ValueCache(1_024);
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 20; j++) {
+                cache.get(key(i));
+            }
+            cache.offer(key(i), value(i), cache.epoch());
+        }
+        // several times more one-off keys than the cache holds, every set sees many of them
+        for (int i = 100; i < 5_100; i++) {
+            byte[] key = key(i);
+            cache.get(key);
+            cache.offer(key, value(i), cache.epoch());
+        }
+
+        for (int i = 0; i < 8; i++) {
+            assertArrayEquals(value(i), cache.get(key(i)), "Hot key " + i + " was evicted");
+        }
+    }
+
+    @Test
+    void shouldNotCacheValueReadBeforeConcurrentWrite() {
+        ValueCache cache = new ValueCache(64);
+        long epoch = cache.epoch();
+        // the writer publishes a new value after the reader took the epoch but before it offers the old one
+        cache.invalidate(key(1));
+        cache.offer(key(1), value(1), epoch);
+
+        assertNull(cache.get(key(1)));
+    }
+
+    @Test
+    void shouldNeverReturnStaleValuesToConcurrentReaders() throws Exception {
+        BPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(new MapBasedPageManager()), null, new ValueCache(16));
+        for (int i = 0; i < 8; i++) {
+            tree.put(key(i), value(0));
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong written = new AtomicLong();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get() && failure.get() == null) {
+                for (int i = 0; i < 8; i++) {
+                    // anything written before the read started has to be seen
+                    long before = written.get();
+                    long read = Long.parseLong(new String(tree.get(key(i))).substring("value-".length()));
+                    if (read < before) {
+                        failure.set("Key " + i + " returned " + read + " after " + before + " was written");
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int version = 1; version <= 2_000; version++) {
+            for (int i = 0; i < 8; i++) {
+                tree.put(key(i), value(version));
+            }
+            written.set(version);
+        }
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get());
+    }
+
+    private static void warm(BPlusTree tree, int... ids) {
+        for (int i = 0; i < 3; i++) {
+            for (int id : ids) {
+                tree.get(key(id));
+            }
+        }
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%06d", i).getBytes();
+    }
+
+    private static byte[] value(int i) {
+        return ("value-" + i).getBytes();
+    }
+}
@@ -2,6 +2,8 @@ package org.logart;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.CountDownLatch;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class VersionedRefCounterTest {
@@ -50,4 +52,45 @@ public class VersionedRefCounterTest {
         assertNotEquals(updated.version(), concurrent.version());
         assertEquals("Initial", concurrent.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldNotReclaimVersionHeldByAnotherThread() throws Exception {
+        VersionedRefCounter<String> refCounter = new VersionedRefCounter<>(() -> "Initial");
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            Versioned<String> held = refCounter.lockVersion();
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            refCounter.releaseVersion(held);
+        });
+        reader.start();
+        locked.await();
+
+        Versioned<String> current = refCounter.lockVersion();
+        refCounter.advanceVersion(current, "NewValue");
+        refCounter.releaseVersion(current);
+
+        assertFalse(refCounter.isReclaimable(0), "Version 0 is still read by another thread");
+        assertEquals(0, refCounter.reclaimableBefore());
+
+        release.countDown();
+        reader.join();
+
+        assertTrue(refCounter.isReclaimable(0));
+        assertEquals(1, refCounter.reclaimableBefore());
+    }
+
+    @Test
+    public void shouldFailToReleaseNotLockedVersion() {
+        VersionedRefCounter<String> refCounter = new VersionedRefCounter<>(() -> "Initial");
+        Versioned<String> current = refCounter.lockVersion();
+        assertEquals(0, refCounter.releaseVersion(current));
+
+        assertThrows(IllegalStateException.class, () -> refCounter.releaseVersion(current));
+    }
+}
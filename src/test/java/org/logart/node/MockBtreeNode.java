@@ -2,6 +2,9 @@ package org.logart.node;
 
 import org.logart.page.Page;
 
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
 public class MockBtreeNode implements BTreeNode {
     @Override
     public long id() {
@@ -18,21 +21,56 @@ public class MockBtreeNode implements BTreeNode {
         return new byte[0];
     }
 
+    @Override
+    public ByteBuffer getView(byte[] key) {
+        return null;
+    }
+
+    @Override
+    public boolean getLong(byte[] key, LongConsumer consumer) {
+        return false;
+    }
+
     @Override
     public byte[][] get(int idx) {
         return new byte[0][];
     }
 
+    @Override
+    public int indexOf(byte[] key) {
+        return -1;
+    }
+
     @Override
     public boolean isAlmostFull(long capacity) {
         return false;
     }
 
+    @Override
+    public boolean needsSplit(long capacity) {
+        return false;
+    }
+
+    @Override
+    public boolean isAppend(byte[] key) {
+        return false;
+    }
+
+    @Override
+    public boolean isUnderfull() {
+        return false;
+    }
+
     @Override
     public void copyChildren(BTreeNode node, int startIdx, int endIdx) {
 
     }
 
+    @Override
+    public void copyEntries(BTreeNode node, int startIdx, int endIdx) {
+
+    }
+
     @Override
     public void addChildren(byte[] key, long leftPageId, long rightPageId) {
 
@@ -48,6 +86,11 @@ public class MockBtreeNode implements BTreeNode {
         return 0;
     }
 
+    @Override
+    public long child(int idx) {
+        return 0;
+    }
+
     @Override
     public int numKeys() {
         return 0;
@@ -58,6 +101,16 @@ public class MockBtreeNode implements BTreeNode {
         return false;
     }
 
+    @Override
+    public boolean hasLeafChildren() {
+        return false;
+    }
+
+    @Override
+    public void setLeafChildren(boolean leafChildren) {
+
+    }
+
     @Override
     public void copy(BTreeNode node) {
 
@@ -0,0 +1,129 @@
+package org.logart.node;
+
+import org.junit.jupiter.api.Test;
+import org.logart.DefaultBPlusTree;
+import org.logart.Versioned;
+import org.logart.VersionedRefCounter;
+import org.logart.page.memory.MapBasedPageManager;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageReclaimerTest {
+    @Test
+    void shouldKeepRetiredPagesWhileOldVersionIsRead() {
+        MapBasedPageManager pageManager = new MapBasedPageManager();
+        DefaultNodeManager nodeManager = new DefaultNodeManager(pageManager);
+        DefaultBPlusTree tree = new DefaultBPlusTree(nodeManager);
+        tree.put(key(0), key(0));
+
+        Versioned<BTreeNode> reader = nodeManager.lockVersion();
+        long oldRoot = reader.get().id();
+        for (int i = 1; i < 100; i++) {
+            tree.put(key(i), key(i));
+        }
+        assertTrue(nodeManager.reclaimBacklog() > 0, "Replaced pages should wait for the reader");
+        assertNotNull(pageManager.readPage(oldRoot), "Root of the read version should not be freed");
+
+        nodeManager.releaseVersion(reader);
+
+        assertEquals(0, nodeManager.reclaimBacklog());
+        assertNull(pageManager.readPage(oldRoot));
+        assertNoLeak(tree, pageManager);
+    }
+
+    @Test
+    void shouldReclaimInBackground() throws Exception {
+        MapBasedPageManager pageManager = new MapBasedPageManager();
+        DefaultNodeManager nodeManager = new DefaultNodeManager(pageManager, true);
+        DefaultBPlusTree tree = new DefaultBPlusTree(nodeManager);
+        for (int i = 0; i < 500; i++) {
+            tree.put(key(i), key(i));
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (nodeManager.reclaimBacklog() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, nodeManager.reclaimBacklog(), "Background reclaimer should drain retired pages");
+        assertNoLeak(tree, pageManager);
+        for (int i = 0; i < 500; i++) {
+            assertArrayEquals(key(i), tree.get(key(i)));
+        }
+        tree.close();
+    }
+
+    @Test
+    void shouldThrowBackgroundFailureOnClose() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        AtomicInteger attempts = new AtomicInteger();
+        MapBasedPageManager pageManager = failingPageManager(failing, attempts);
+        VersionedRefCounter<String> refCounter = new VersionedRefCounter<>(() -> "root");
+        refCounter.load("root", 5);
+        PageReclaimer reclaimer = new PageReclaimer(pageManager, refCounter, pageId -> true, true);
+
+        reclaimer.retire(new long[]{pageManager.allocatePage().pageId(), pageManager.allocatePage().pageId()}, 2, 1);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (attempts.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(attempts.get() > 0, "Background reclaimer should try to free the pages");
+
+        failing.set(false);
+        IllegalStateException e = assertThrows(IllegalStateException.class, reclaimer::close);
+        assertEquals("Free failed", e.getMessage());
+        // pages of the failed batch are freed by the next attempt
+        assertEquals(0, reclaimer.backlogSize());
+        assertEquals(2, reclaimer.reclaimedCount());
+        assertTrue(pageManager.getAllAllocatedPageIds().isEmpty(), "Pages should be freed");
+        // the failure is reported once
+        assertEquals(0, reclaimer.reclaim());
+    }
+
+    @Test
+    void shouldKeepPagesWhoseFreeFailed() {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        MapBasedPageManager pageManager = failingPageManager(failing, new AtomicInteger());
+        VersionedRefCounter<String> refCounter = new VersionedRefCounter<>(() -> "root");
+        refCounter.load("root", 5);
+        PageReclaimer reclaimer = new PageReclaimer(pageManager, refCounter, pageId -> true, false);
+        long[] pageIds = {pageManager.allocatePage().pageId(), pageManager.allocatePage().pageId()};
+
+        assertThrows(IllegalStateException.class, () -> reclaimer.retire(pageIds, 2, 1));
+        assertEquals(2, reclaimer.backlogSize(), "Pages of the failed batch should still wait to be freed");
+        assertEquals(0, reclaimer.reclaimedCount());
+
+        failing.set(false);
+        assertEquals(2, reclaimer.reclaim());
+        assertEquals(0, reclaimer.backlogSize());
+        assertTrue(pageManager.getAllAllocatedPageIds().isEmpty(), "Pages should be freed");
+    }
+
+    private static MapBasedPageManager failingPageManager(AtomicBoolean failing, AtomicInteger attempts) {
+        return new MapBasedPageManager() {
+            @Override
+            public void freePages(long[] pageIds) {
+                if (failing.get()) {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("Free failed");
+                }
+                super.freePages(pageIds);
+            }
+        };
+    }
+
+    private static void assertNoLeak(DefaultBPlusTree tree, MapBasedPageManager pageManager) {
+        Set<Long> leaked = new HashSet<>(pageManager.getAllAllocatedPageIds());
+        tree.collectReachablePageIds().forEach(leaked::remove);
+        assertTrue(leaked.isEmpty(), "There are leaked pages: " + leaked);
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%05d", i).getBytes();
+    }
+}
@@ -0,0 +1,122 @@
+package org.logart.node;
+
+import org.junit.jupiter.api.Test;
+import org.logart.BPlusTree;
+import org.logart.DefaultBPlusTree;
+import org.logart.page.memory.MapBasedPageManager;
+import org.logart.page.mmap.MMAPBasedPageManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpperLevelsTest {
+
+    @Test
+    void shouldSkipDecodedLevelsOnReads() {
+        AtomicLong reads = new AtomicLong();
+        DefaultNodeManager plain = countingNodeManager(0, reads);
+        DefaultNodeManager decoded = countingNodeManager(3, reads);
+        BPlusTree plainTree = new DefaultBPlusTree(plain);
+        BPlusTree decodedTree = new DefaultBPlusTree(decoded);
+        for (int i = 0; i < 1_000; i++) {
+            plainTree.put(key(i), value(i));
+            decodedTree.put(key(i), value(i));
+        }
+
+        reads.set(0);
+        for (int i = 0; i < 1_000; i++) {
+            assertArrayEquals(value(i), plainTree.get(key(i)));
+        }
+        long plainReads = reads.getAndSet(0);
+        for (int i = 0; i < 1_000; i++) {
+            assertArrayEquals(value(i), decodedTree.get(key(i)));
+        }
+        long decodedReads = reads.get();
+
+        // root is not read through the node manager, the two levels below it are skipped
+        assertEquals(plainReads - 2 * 1_000, decodedReads);
+    }
+
+    @Test
+    void shouldDecodeOnlyReplacedPagesAfterWrite() {
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MapBasedPageManager(), false, ReaderLeaseLimits.NONE, 3);
+        BPlusTree tree = new DefaultBPlusTree(nodeManager);
+        for (int i = 0; i < 1_000; i++) {
+            tree.put(key(i * 2), value(i));
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            int id = random.nextInt(2_000);
+            tree.put(key(id), value(id));
+
+            // path of the write through the decoded levels, a split could add one more node per level
+            assertTrue(nodeManager.upperLevels().decodedCount() <= 6,
+                    "Write of " + id + " decoded " + nodeManager.upperLevels().decodedCount() + " nodes");
+        }
+    }
+
+    @Test
+    void shouldMatchModelWhenTreeChangesShape() throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-upper-levels-test", ".db");
+        DefaultNodeManager nodeManager = new DefaultNodeManager(new MMAPBasedPageManager(tempFile.toFile(), 4096),
+                false, ReaderLeaseLimits.NONE, 2);
+        BPlusTree tree = new DefaultBPlusTree(nodeManager);
+        try {
+            TreeMap<Integer, byte[]> model = new TreeMap<>();
+            Random random = new Random(42);
+            for (int op = 0; op < 30_000; op++) {
+                int id = random.nextInt(20_000);
+                switch (random.nextInt(10)) {
+                    case 0, 1, 2, 3 -> {
+                        byte[] value = value(op);
+                        tree.put(key(id), value);
+                        model.put(id, value);
+                    }
+                    case 4 -> {
+                        tree.delete(key(id));
+                        model.remove(id);
+                    }
+                    case 5 -> {
+                        if (random.nextInt(100) == 0) {
+                            // drops whole subtrees, the tree gets lower
+                            tree.deleteRange(key(id), key(id + 5_000));
+                            model.subMap(id, id + 5_000).clear();
+                        }
+                    }
+                    default -> assertArrayEquals(model.get(id), tree.get(key(id)), "Wrong value of key " + id + " at " + op);
+                }
+            }
+            for (Map.Entry<Integer, byte[]> entry : model.entrySet()) {
+                assertArrayEquals(entry.getValue(), tree.get(key(entry.getKey())));
+            }
+        } finally {
+            tree.close();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static DefaultNodeManager countingNodeManager(int decodedLevels, AtomicLong reads) {
+        return new DefaultNodeManager(new MapBasedPageManager(), false, ReaderLeaseLimits.NONE, decodedLevels) {
+            @Override
+            public BTreeNode readNode(long nodeId) {
+                reads.incrementAndGet();
+                return super.readNode(nodeId);
+            }
+        };
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%06d", i).getBytes();
+    }
+
+    private static byte[] value(int i) {
+        return ("value-" + i).getBytes();
+    }
+}
@@ -0,0 +1,176 @@
+package org.logart.page.mmap;
+
+import org.junit.jupiter.api.Test;
+import org.logart.BPlusTree;
+import org.logart.DefaultBPlusTree;
+import org.logart.node.DefaultNodeManager;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.logart.page.mmap.AbstractPage.PAGE_SIZE;
+
+public class CompactPageTest {
+
+    @Test
+    void shouldReadShortAndLongEntriesOfCompactLeaf() {
+        LeafPage page = (LeafPage) LeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), false, false, true);
+        byte[] longKey = "k".repeat(300).getBytes();
+        byte[] longValue = "v".repeat(1_000).getBytes();
+        byte[] longBytes = ByteBuffer.allocate(Long.BYTES).putLong(42).array();
+
+        assertTrue(page.put(key(1), key(1)));
+        assertTrue(page.put(longKey, longValue));
+        assertTrue(page.put(key(2), longBytes));
+        assertTrue(page.put(key(1), "updated".getBytes()));
+
+        assertTrue(page.isCompact());
+        assertEquals(3, page.getEntryCount());
+        assertArrayEquals("updated".getBytes(), page.get(key(1)));
+        assertArrayEquals(longValue, page.get(longKey));
+        assertEquals(ByteBuffer.wrap(longValue), page.getView(longKey));
+        long[] read = new long[1];
+        assertTrue(page.getLong(key(2), value -> read[0] = value));
+        assertEquals(42, read[0]);
+        assertArrayEquals(longKey, page.getEntry(0)[0]);
+        assertArrayEquals(key(2), page.getEntry(2)[0]);
+        assertNull(page.get(key(3)));
+    }
+
+    @Test
+    void shouldHoldMoreEntriesInCompactPages() {
+        LeafPage leaf = (LeafPage) LeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE));
+        LeafPage compactLeaf = (LeafPage) LeafPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE), false, false, true);
+        InternalPage internal = (InternalPage) InternalPage.newPage(3, ByteBuffer.allocate(PAGE_SIZE));
+        InternalPage compactInternal = (InternalPage) InternalPage.newPage(4, ByteBuffer.allocate(PAGE_SIZE), true, false, true);
+        fill(leaf);
+        fill(compactLeaf);
+        fill(internal);
+        fill(compactInternal);
+
+        // 13 byte keys and values, 2 bytes of length fields saved per leaf entry, 5 per separator
+        assertTrue(compactLeaf.getEntryCount() > leaf.getEntryCount() * 105 / 100,
+                compactLeaf.getEntryCount() + " vs " + leaf.getEntryCount() + " leaf entries");
+        assertTrue(compactInternal.getEntryCount() > internal.getEntryCount() * 120 / 100,
+                compactInternal.getEntryCount() + " vs " + internal.getEntryCount() + " separators");
+        for (int i = 0; i < compactInternal.getEntryCount(); i++) {
+            assertEquals(i + 1, compactInternal.getChild(key(i)));
+            assertEquals(i, compactInternal.getChild(i));
+        }
+    }
+
+    @Test
+    void shouldKeepChildIdsOfCompactInternalPageBelow32Bits() {
+        InternalPage page = (InternalPage) InternalPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), true, false, true);
+        page.addChild(key(1), 0xFFFF_FFFEL, 0xFFFF_FFFFL);
+
+        assertEquals(0xFFFF_FFFEL, page.getChild(key(0)));
+        assertEquals(0xFFFF_FFFFL, page.getChild(key(1)));
+        assertThrows(IllegalStateException.class, () -> page.replaceChild(0xFFFF_FFFFL, 1L << 32));
+        assertThrows(IllegalStateException.class, () -> page.addChild(key(2), 0xFFFF_FFFFL, 1L << 32));
+    }
+
+    @Test
+    void shouldConvertPagesCopiedAcrossFormats() {
+        LeafPage leaf = (LeafPage) LeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE));
+        int entries = fill(leaf);
+        InternalPage internal = (InternalPage) InternalPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE));
+        int separators = fill(internal);
+
+        // a full page of the old format always fits the compact one
+        LeafPage compactLeaf = (LeafPage) LeafPage.newPage(3, ByteBuffer.allocate(PAGE_SIZE), false, false, true);
+        compactLeaf.copy(leaf);
+        InternalPage compactInternal = (InternalPage) InternalPage.newPage(4, ByteBuffer.allocate(PAGE_SIZE), true, false, true);
+        compactInternal.copy(internal);
+        assertTrue(compactLeaf.isCompact());
+        assertTrue(compactInternal.isCompact());
+        assertEntries(compactLeaf, entries);
+        assertSeparators(compactInternal, 0, separators);
+
+        // fill the compact pages, their entries no longer fit the old format
+        entries = fill(compactLeaf);
+        separators = fill(compactInternal);
+        LeafPage copiedLeaf = (LeafPage) LeafPage.newPage(5, ByteBuffer.allocate(PAGE_SIZE));
+        copiedLeaf.copy(compactLeaf);
+        InternalPage copiedInternal = (InternalPage) InternalPage.newPage(6, ByteBuffer.allocate(PAGE_SIZE));
+        copiedInternal.copy(compactInternal);
+        assertTrue(copiedLeaf.isCompact());
+        assertTrue(copiedInternal.isCompact());
+        assertEntries(copiedLeaf, entries);
+        assertSeparators(copiedInternal, 0, separators);
+
+        // halves of a split always fit
+        LeafPage half = (LeafPage) LeafPage.newPage(7, ByteBuffer.allocate(PAGE_SIZE));
+        half.copyEntries(compactLeaf, 0, entries / 2);
+        InternalPage halfInternal = (InternalPage) InternalPage.newPage(8, ByteBuffer.allocate(PAGE_SIZE));
+        halfInternal.copyChildren(compactInternal, separators / 2, separators);
+        assertFalse(half.isCompact());
+        assertFalse(halfInternal.isCompact());
+        assertEntries(half, entries / 2);
+        assertSeparators(halfInternal, separators / 2, separators);
+    }
+
+    @Test
+    void shouldTakeFewerPagesThanWideLayout() throws Exception {
+        Path compactFile = Files.createTempFile("bplustree-compact-test", ".db");
+        Path wideFile = Files.createTempFile("bplustree-wide-test", ".db");
+        try {
+            MMAPBasedPageManager compactPages = new MMAPBasedPageManager(compactFile.toFile(), PAGE_SIZE,
+                    false, false, KeySearch.BINARY, false, true);
+            MMAPBasedPageManager widePages = new MMAPBasedPageManager(wideFile.toFile(), PAGE_SIZE);
+            BPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(compactPages));
+            BPlusTree wideTree = new DefaultBPlusTree(new DefaultNodeManager(widePages));
+            Random random = new Random(42);
+            for (int i = 0; i < 4_000; i++) {
+                int id = random.nextInt(100_000);
+                tree.put(key(id), key(id));
+                wideTree.put(key(id), key(id));
+            }
+            assertTrue(compactPages.getAllAllocatedNodeIds().size() < widePages.getAllAllocatedNodeIds().size(),
+                    compactPages.getAllAllocatedNodeIds().size() + " vs " + widePages.getAllAllocatedNodeIds().size() + " pages");
+            tree.close();
+            wideTree.close();
+        } finally {
+            Files.deleteIfExists(compactFile);
+            Files.deleteIfExists(wideFile);
+        }
+    }
+
+    private static int fill(LeafPage page) {
+        int entries = page.getEntryCount();
+        while (page.put(key(entries), key(entries))) {
+            entries++;
+        }
+        return entries;
+    }
+
+    private static int fill(InternalPage page) {
+        int separators = page.getEntryCount();
+        while (page.addChild(key(separators), separators, separators + 1)) {
+            separators++;
+        }
+        return separators;
+    }
+
+    private static void assertEntries(LeafPage page, int entries) {
+        assertEquals(entries, page.getEntryCount());
+        for (int i = 0; i < entries; i++) {
+            assertArrayEquals(key(i), page.get(key(i)), "Wrong value of key " + i);
+        }
+    }
+
+    private static void assertSeparators(InternalPage page, int from, int to) {
+        assertEquals(to - from, page.getEntryCount());
+        assertEquals(from, page.getChild(0));
+        for (int i = from; i < to; i++) {
+            assertEquals(i + 1, page.getChild(key(i)), "Wrong child for key " + i);
+        }
+    }
+
+    private static byte[] key(int i) {
+        return String.format("testKey%06d", i).getBytes();
+    }
+}
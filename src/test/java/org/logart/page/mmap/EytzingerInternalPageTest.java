@@ -0,0 +1,90 @@
+package org.logart.page.mmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.logart.page.mmap.AbstractPage.PAGE_SIZE;
+
+public class EytzingerInternalPageTest {
+
+    @Test
+    void shouldRouteKeysLikeSortedLayout() {
+        Random random = new Random(42);
+        for (String prefix : new String[]{"", "key-", "tenant-0042/order-"}) {
+            InternalPage sorted = (InternalPage) InternalPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE));
+            InternalPage eytzinger = (InternalPage) InternalPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE), true, true);
+            List<byte[]> separators = new ArrayList<>();
+            Set<String> unique = new HashSet<>();
+            for (int i = 0; i < 500; i++) {
+                // short suffixes and long shared ones, so some separators tie on the 4 bytes after the prefix
+                String suffix = random.nextBoolean()
+                        ? Integer.toString(random.nextInt(1_000))
+                        : "9999-" + random.nextInt(1_000);
+                if (!unique.add(suffix)) {
+                    continue;
+                }
+                byte[] separator = (prefix + suffix).getBytes();
+                if (!eytzinger.addChild(separator, i, i + 1_000)) {
+                    break;
+                }
+                sorted.addChild(separator, i, i + 1_000);
+                separators.add(separator);
+            }
+            assertTrue(eytzinger.hasEytzinger());
+            assertTrue(eytzinger.getEntryCount() > 50, "Only " + eytzinger.getEntryCount() + " separators fit");
+
+            List<byte[]> probes = new ArrayList<>(separators);
+            for (byte[] separator : separators) {
+                probes.add(Arrays.copyOf(separator, separator.length + 1));
+                probes.add(Arrays.copyOf(separator, Math.max(0, separator.length - 1)));
+            }
+            probes.add(new byte[0]);
+            probes.add(prefix.getBytes());
+            probes.add(new byte[]{(byte) 0xFF});
+            for (byte[] probe : probes) {
+                assertEquals(sorted.getChild(probe), eytzinger.getChild(probe), "Wrong child for " + new String(probe));
+            }
+        }
+    }
+
+    @Test
+    void shouldCopyAndReplaceChildrenAcrossLayouts() {
+        InternalPage eytzinger = (InternalPage) InternalPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), true, true);
+        for (int i = 1; i < 100; i++) {
+            eytzinger.addChild(key(i), i * 100, (i + 1) * 100);
+        }
+        InternalPage half = (InternalPage) InternalPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE), true, true);
+        half.copyChildren(eytzinger, 50, 99);
+        InternalPage sorted = (InternalPage) InternalPage.newPage(3, ByteBuffer.allocate(PAGE_SIZE));
+        sorted.copyChildren(eytzinger, 0, 99);
+        InternalPage back = (InternalPage) InternalPage.newPage(4, ByteBuffer.allocate(PAGE_SIZE), true, true);
+        back.copyChildren(sorted, 0, 99);
+        back.replaceChild(5_000, 5_050);
+
+        assertFalse(sorted.hasEytzinger());
+        assertTrue(back.hasEytzinger());
+        for (int i = 1; i < 100; i++) {
+            assertEquals(i * 100, sorted.getChild(key(i - 1)));
+            assertEquals((i + 1) * 100, sorted.getChild(key(i)));
+            long expected = (i + 1) * 100 == 5_000 ? 5_050 : (i + 1) * 100;
+            assertEquals(expected, back.getChild(key(i)), "Wrong child for key " + i);
+            if (i > 50) {
+                assertEquals((i + 1) * 100, half.getChild(key(i)));
+            } else {
+                assertEquals(5_100, half.getChild(key(i)));
+            }
+        }
+    }
+
+    private static byte[] key(int i) {
+        return String.format("testKey%06d", i).getBytes();
+    }
+}
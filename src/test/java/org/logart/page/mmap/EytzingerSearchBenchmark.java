@@ -0,0 +1,59 @@
+package org.logart.page.mmap;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Rough comparison of child lookups in internal pages with sorted and Eytzinger separator layouts, not a test.
+ * <p>
+ * Run with {@code java -cp target/classes:target/test-classes org.logart.page.mmap.EytzingerSearchBenchmark}.
+ */
+public class EytzingerSearchBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int OPS = 2_000_000;
+
+    public static void main(String[] args) {
+        for (String format : new String[]{"key-%08d", "user:%016x:profile"}) {
+            for (boolean eytzinger : new boolean[]{false, true}) {
+                InternalPage page = (InternalPage) InternalPage.newPage(1, ByteBuffer.allocateDirect(AbstractPage.PAGE_SIZE), true, eytzinger);
+                int count = 0;
+                while (page.addChild(separator(format, count), count, count + 1)) {
+                    count++;
+                }
+                Random random = new Random(42);
+                byte[][] probes = new byte[1024][];
+                for (int i = 0; i < probes.length; i++) {
+                    // mostly between separators, a few past either end
+                    probes[i] = String.format(format, random.nextLong(count * 9_000L)).getBytes();
+                }
+                time(String.format("getChild, %-20s %3d separators, eytzinger %s", format, count, eytzinger), () -> {
+                    long sum = 0;
+                    for (int op = 0; op < OPS; op++) {
+                        sum += page.getChild(probes[op & 1023]);
+                    }
+                    return sum;
+                });
+            }
+        }
+    }
+
+    private static byte[] separator(String format, int i) {
+        // spread separators over the key space, so probes fall between them
+        return String.format(format, Math.max(0, i) * 7_919L).getBytes();
+    }
+
+    private static void time(String name, Op op) {
+        long best = Long.MAX_VALUE;
+        long blackhole = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            blackhole += op.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-70s %8.1f ns/op (%d)%n", name, best / (double) OPS, blackhole & 1);
+    }
+
+    private interface Op {
+        long run();
+    }
+}
@@ -0,0 +1,93 @@
+package org.logart.page.mmap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rough comparison of fingerprint scans and of leaf point lookups with and without fingerprints, not a test.
+ * <p>
+ * Run with {@code java --add-modules jdk.incubator.vector -cp target/classes:target/test-classes
+ * org.logart.page.mmap.FingerprintSearchBenchmark}, the vector row is skipped when the module is absent.
+ * Add {@code -XX:UseAVX=2} to measure AVX2 vectors on an AVX-512 host.
+ */
+public class FingerprintSearchBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int OPS = 2_000_000;
+
+    public static void main(String[] args) {
+        List<FingerprintSearch> searches = new ArrayList<>(List.of(new ScalarFingerprintSearch()));
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            searches.add(new VectorFingerprintSearch());
+        }
+        Random random = new Random(42);
+        for (int entries : new int[]{64, 200, 500}) {
+            ByteBuffer fingerprints = ByteBuffer.allocateDirect(entries);
+            for (int i = 0; i < entries; i++) {
+                fingerprints.put(i, (byte) random.nextInt(256));
+            }
+            byte[] probes = new byte[1024];
+            random.nextBytes(probes);
+            System.out.printf("fingerprint scan, %d entries%n", entries);
+            time("  byte by byte", () -> {
+                long sum = 0;
+                for (int op = 0; op < OPS; op++) {
+                    byte probe = probes[op & 1023];
+                    for (int i = 0; i < entries; i++) {
+                        if (fingerprints.get(i) == probe) {
+                            sum += i;
+                            break;
+                        }
+                    }
+                }
+                return sum;
+            });
+            for (FingerprintSearch search : searches) {
+                time("  " + search.getClass().getSimpleName(), () -> {
+                    long sum = 0;
+                    for (int op = 0; op < OPS; op++) {
+                        sum += search.indexOf(fingerprints, 0, 0, entries, probes[op & 1023]);
+                    }
+                    return sum;
+                });
+            }
+        }
+
+        for (boolean withFingerprints : new boolean[]{false, true}) {
+            LeafPage page = (LeafPage) LeafPage.newPage(1, ByteBuffer.allocateDirect(AbstractPage.PAGE_SIZE), withFingerprints);
+            int count = 0;
+            while (page.put(String.format("key-%08d", count * 7919 % 1_000_000).getBytes(), new byte[4])) {
+                count++;
+            }
+            byte[][] keys = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                keys[i] = String.format("key-%08d", i * 7919 % 1_000_000).getBytes();
+            }
+            int entries = count;
+            time(String.format("leaf get, %d entries, fingerprints %s, search %s", entries, withFingerprints,
+                    FingerprintSearch.INSTANCE.getClass().getSimpleName()), () -> {
+                long sum = 0;
+                for (int op = 0; op < OPS; op++) {
+                    sum += page.get(keys[op % entries]).length;
+                }
+                return sum;
+            });
+        }
+    }
+
+    private static void time(String name, Op op) {
+        long best = Long.MAX_VALUE;
+        long blackhole = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            blackhole += op.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-70s %8.1f ns/op (%d)%n", name, best / (double) OPS, blackhole & 1);
+    }
+
+    private interface Op {
+        long run();
+    }
+}
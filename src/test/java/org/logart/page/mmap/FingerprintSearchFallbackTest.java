@@ -0,0 +1,35 @@
+package org.logart.page.mmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.logart.page.mmap.AbstractPage.PAGE_SIZE;
+
+/**
+ * Runs in its own surefire execution without {@code --add-modules jdk.incubator.vector} and with vector search
+ * requested, see pom.xml.
+ */
+public class FingerprintSearchFallbackTest {
+
+    @Test
+    void shouldUseScalarSearchWhenVectorModuleIsAbsent() {
+        assertTrue(Boolean.getBoolean(FingerprintSearch.VECTOR_SEARCH_PROPERTY), "Vector search should be requested");
+        assertTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty(), "Vector module should be absent");
+        assertInstanceOf(ScalarFingerprintSearch.class, FingerprintSearch.INSTANCE);
+
+        LeafPage page = (LeafPage) LeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), true);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(page.put(key(i), key(i)));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(key(i), page.get(key(i)));
+        }
+        assertNull(page.get(key(100)));
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%06d", i).getBytes();
+    }
+}
@@ -0,0 +1,49 @@
+package org.logart.page.mmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FingerprintSearchTest {
+
+    @Test
+    void shouldFindFirstMatchLikeLinearScan() {
+        List<FingerprintSearch> searches = new ArrayList<>(List.of(new ScalarFingerprintSearch()));
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            searches.add(new VectorFingerprintSearch());
+        }
+        Random random = new Random(42);
+        for (ByteOrder order : List.of(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(300).order(order);
+            for (int i = 0; i < buffer.capacity(); i++) {
+                // few distinct values so that matches happen in every word
+                buffer.put(i, (byte) (random.nextInt(24) - 12));
+            }
+            for (FingerprintSearch search : searches) {
+                for (int from = 0; from < 140; from += 3) {
+                    for (int to = from; to < 290; to += 17) {
+                        for (byte fingerprint = -13; fingerprint <= 13; fingerprint++) {
+                            assertEquals(linear(buffer, 10, from, to, fingerprint), search.indexOf(buffer, 10, from, to, fingerprint),
+                                    search.getClass().getSimpleName() + " " + order + " from " + from + " to " + to + " fingerprint " + fingerprint);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int linear(ByteBuffer buffer, int offset, int from, int to, byte fingerprint) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(offset + i) == fingerprint) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
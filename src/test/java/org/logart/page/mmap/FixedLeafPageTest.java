@@ -0,0 +1,223 @@
+package org.logart.page.mmap;
+
+import org.junit.jupiter.api.Test;
+import org.logart.LongBPlusTree;
+import org.logart.node.DefaultNodeManager;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.logart.page.mmap.AbstractPage.PAGE_SIZE;
+
+public class FixedLeafPageTest {
+
+    @Test
+    void shouldKeepEntriesSortedAndUpdateInPlace() {
+        FixedLeafPage page = (FixedLeafPage) FixedLeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        for (long i : shuffled(100)) {
+            assertTrue(page.put(key(i), value(i)));
+        }
+        assertTrue(page.put(key(42), value(-1)));
+
+        assertEquals(100, page.getEntryCount());
+        assertEquals(0, page.getFragmentedSpace());
+        for (long i = 0; i < 100; i++) {
+            long expected = i == 42 ? -10 : i * 10;
+            assertArrayEquals(i == 42 ? value(-1) : value(i), page.get(key(i)));
+            assertArrayEquals(key(i), page.getEntry((int) i)[0], "Entries should stay sorted");
+            assertEquals(expected, page.getView(key(i)).getLong(0));
+            long[] read = new long[1];
+            assertTrue(page.getLong(key(i), v -> read[0] = v));
+            assertEquals(expected, read[0]);
+        }
+        assertNull(page.get(key(100)));
+        assertFalse(page.getLong(key(100), v -> fail("Missing key should not be read")));
+        assertThrows(IllegalArgumentException.class, () -> page.put(new byte[4], value(1)));
+    }
+
+    @Test
+    void shouldHoldMoreEntriesThanSlottedLeaf() {
+        FixedLeafPage fixed = (FixedLeafPage) FixedLeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        LeafPage slotted = (LeafPage) LeafPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE));
+        int fixedCount = 0;
+        while (fixed.put(key(fixedCount * 7919L), value(fixedCount))) {
+            fixedCount++;
+        }
+        int slottedCount = 0;
+        while (slotted.put(key(slottedCount * 7919L), value(slottedCount))) {
+            slottedCount++;
+        }
+
+        assertEquals(FixedLeafPage.capacity(8, 8), fixedCount);
+        assertTrue(fixed.isAlmostFull(16));
+        assertTrue(fixedCount >= slottedCount * 1.3, fixedCount + " fixed size entries vs " + slottedCount + " slotted");
+        for (int i = 0; i < fixedCount; i++) {
+            assertArrayEquals(value(i), fixed.get(key(i * 7919L)));
+        }
+    }
+
+    @Test
+    void shouldCopyBetweenLayouts() {
+        FixedLeafPage fixed = (FixedLeafPage) FixedLeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        for (long i : shuffled(60)) {
+            fixed.put(key(i), value(i));
+        }
+        FixedLeafPage half = (FixedLeafPage) FixedLeafPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        half.copyEntries(fixed, 30, 60);
+        LeafPage slotted = (LeafPage) LeafPage.newPage(3, ByteBuffer.allocate(PAGE_SIZE), true);
+        slotted.copy(fixed);
+        FixedLeafPage back = (FixedLeafPage) FixedLeafPage.newPage(4, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        back.copy(slotted);
+
+        assertEquals(30, half.getEntryCount());
+        assertEquals(60, slotted.getEntryCount());
+        assertEquals(60, back.getEntryCount());
+        assertTrue(slotted.hasFingerprints());
+        for (long i = 0; i < 60; i++) {
+            if (i >= 30) {
+                assertArrayEquals(value(i), half.get(key(i)));
+            } else {
+                assertNull(half.get(key(i)));
+            }
+            assertArrayEquals(value(i), slotted.get(key(i)));
+            assertArrayEquals(value(i), back.get(key(i)));
+        }
+
+        // a full slotted leaf fits a fixed size one, a full fixed size leaf does not fit a slotted one
+        LeafPage fullSlotted = (LeafPage) LeafPage.newPage(5, ByteBuffer.allocate(PAGE_SIZE));
+        int slottedCount = 0;
+        while (fullSlotted.put(key(slottedCount), value(slottedCount))) {
+            slottedCount++;
+        }
+        FixedLeafPage fromSlotted = (FixedLeafPage) FixedLeafPage.newPage(6, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        fromSlotted.copy(fullSlotted);
+        assertEquals(slottedCount, fromSlotted.getEntryCount());
+        for (long i = 0; i < slottedCount; i++) {
+            assertArrayEquals(value(i), fromSlotted.get(key(i)));
+        }
+        FixedLeafPage fullFixed = (FixedLeafPage) FixedLeafPage.newPage(7, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        for (long i = 0; i < FixedLeafPage.capacity(8, 8); i++) {
+            assertTrue(fullFixed.put(key(i), value(i)));
+        }
+        LeafPage fromFixed = (LeafPage) LeafPage.newPage(8, ByteBuffer.allocate(PAGE_SIZE));
+        assertThrows(IllegalStateException.class, () -> fromFixed.copy(fullFixed));
+
+        // entries of another size are rejected before anything is copied
+        LeafPage wide = (LeafPage) LeafPage.newPage(9, ByteBuffer.allocate(PAGE_SIZE));
+        wide.put(key(1), value(1));
+        wide.put(key(2), new byte[4]);
+        FixedLeafPage fromWide = (FixedLeafPage) FixedLeafPage.newPage(10, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        assertThrows(IllegalStateException.class, () -> fromWide.copy(wide));
+        assertEquals(0, fromWide.getEntryCount());
+    }
+
+    @Test
+    void shouldOrderKeysLikeUnsignedComparison() {
+        Random random = new Random(7);
+        FixedLeafPage page = (FixedLeafPage) FixedLeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // raw keys, half of them with the high bit of the first byte set
+            byte[] key = ByteBuffer.allocate(Long.BYTES).putLong(random.nextLong()).array();
+            keys.add(key);
+            page.put(key, value(i));
+        }
+        keys.sort(Arrays::compareUnsigned);
+
+        for (int i = 0; i < keys.size(); i++) {
+            assertArrayEquals(keys.get(i), page.getEntry(i)[0]);
+            assertEquals(i, page.findSlot(keys.get(i)));
+        }
+        assertEquals(-1, page.findSlot(new byte[8]));
+        byte[] max = new byte[8];
+        Arrays.fill(max, (byte) 0xFF);
+        assertEquals(-keys.size() - 1, page.findSlot(max));
+    }
+
+    @Test
+    void shouldFindSameSlotsWithInterpolationSearch() {
+        Random random = new Random(42);
+        FixedLeafPage binary = (FixedLeafPage) FixedLeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        FixedLeafPage interpolation = (FixedLeafPage) FixedLeafPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE), 8, 8);
+        interpolation.setKeySearch(KeySearch.INTERPOLATION);
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            keys.add(key(random.nextLong()));
+        }
+        for (byte[] key : keys) {
+            binary.put(key, value(1));
+            interpolation.put(key, value(1));
+        }
+        for (int i = 0; i < 1_000; i++) {
+            byte[] probe = i < keys.size() ? keys.get(i) : key(random.nextLong());
+            assertEquals(binary.findSlot(probe), interpolation.findSlot(probe));
+        }
+    }
+
+    @Test
+    void shouldServeLongTreeWithFixedSizeLeaves() throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-fixed-test", ".db");
+        MMAPBasedPageManager pageManager = new MMAPBasedPageManager(tempFile.toFile(), PAGE_SIZE, 8, 8, KeySearch.INTERPOLATION);
+        LongBPlusTree tree = new LongBPlusTree(new DefaultNodeManager(pageManager));
+        try {
+            for (long i : shuffled(5_000)) {
+                tree.putLong(i - 2_500, i);
+            }
+            tree.deleteRange(-100, 100);
+            tree.putLong(7, -7);
+            for (long i = 0; i < 5_000; i++) {
+                long key = i - 2_500;
+                long expected = key == 7 ? -7 : key >= -100 && key < 100 ? Long.MIN_VALUE : i;
+                assertEquals(expected, tree.getLong(key, Long.MIN_VALUE), "Wrong value for key " + key);
+            }
+            Set<Long> allocated = Set.copyOf(pageManager.getAllAllocatedNodeIds());
+            assertThrows(IllegalArgumentException.class, () -> tree.put(1, new byte[3]));
+            assertEquals(allocated, pageManager.getAllAllocatedNodeIds(), "Copies of the rejected put should be freed");
+        } finally {
+            tree.close();
+        }
+
+        LongBPlusTree reopened = new LongBPlusTree(new DefaultNodeManager(
+                new MMAPBasedPageManager(tempFile.toFile(), PAGE_SIZE, 8, 8, KeySearch.BINARY)));
+        try {
+            reopened.load();
+            assertEquals(4_999, reopened.getLong(2_499, 0));
+            assertEquals(-7, reopened.getLong(7, 0));
+        } finally {
+            reopened.close();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Test
+    void shouldRejectSizesThatDoNotFitLeaf() {
+        assertThrows(IllegalArgumentException.class, () -> new MMAPBasedPageManager(new File("unused"), PAGE_SIZE, 0, 8, KeySearch.BINARY));
+        assertThrows(IllegalArgumentException.class, () -> new MMAPBasedPageManager(new File("unused"), PAGE_SIZE, 2_000, 8, KeySearch.BINARY));
+    }
+
+    private static List<Long> shuffled(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            ids.add(i);
+        }
+        Collections.shuffle(ids, new Random(42));
+        return ids;
+    }
+
+    private static byte[] key(long i) {
+        return LongBPlusTree.encode(i);
+    }
+
+    private static byte[] value(long i) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(i * 10).array();
+    }
+}
@@ -111,6 +111,20 @@ public class InternalPageTest {
         }
     }
 
+    @Test
+    public void shouldRouteKeysBetweenSeparatorsToLeftChild() {
+        InternalPage page = (InternalPage) InternalPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE));
+        page.addChild(new byte[]{20}, 1, 2);
+        page.addChild(new byte[]{10}, 0, 1);
+        page.addChild(new byte[]{30}, 2, 3);
+
+        int[] keys = {5, 10, 15, 20, 25, 30, 35};
+        long[] expected = {0, 1, 1, 2, 2, 3, 3};
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(expected[i], page.getChild(new byte[]{(byte) keys[i]}), "Wrong child for key " + keys[i]);
+        }
+    }
+
     private byte[] key(int i) {
         return ("testKey" + i).getBytes();
     }
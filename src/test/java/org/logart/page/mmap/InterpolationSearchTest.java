@@ -0,0 +1,138 @@
+package org.logart.page.mmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.logart.page.mmap.AbstractPage.PAGE_SIZE;
+
+public class InterpolationSearchTest {
+
+    @Test
+    void shouldFindSameSlotsAsBinarySearch() {
+        Random random = new Random(42);
+        List<List<byte[]>> keySets = List.of(
+                longKeys(random, 150, Long.MAX_VALUE),
+                longKeys(random, 150, -1L),
+                // skewed, most ids are small and a few are huge
+                skewedKeys(random, 150),
+                stringKeys(150),
+                mixedLengthKeys(random, 150));
+        for (List<byte[]> keys : keySets) {
+            for (boolean keyPrefixes : new boolean[]{false, true}) {
+                LeafPage binary = (LeafPage) LeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), false, keyPrefixes);
+                LeafPage interpolation = (LeafPage) LeafPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE), false, keyPrefixes);
+                interpolation.setKeySearch(KeySearch.INTERPOLATION);
+                for (byte[] key : keys) {
+                    binary.put(key, new byte[]{1});
+                    interpolation.put(key, new byte[]{1});
+                }
+                assertEquals(binary.getEntryCount(), interpolation.getEntryCount());
+                for (int i = 0; i < interpolation.getEntryCount(); i++) {
+                    assertArrayEquals(binary.getEntry(i)[0], interpolation.getEntry(i)[0], "Slots should stay sorted");
+                }
+
+                List<byte[]> probes = new ArrayList<>(keys);
+                for (int i = 0; i < 300; i++) {
+                    byte[] probe = new byte[random.nextInt(12)];
+                    random.nextBytes(probe);
+                    probes.add(probe);
+                }
+                for (byte[] probe : probes) {
+                    assertEquals(binary.findSlot(probe), interpolation.findSlot(probe), "Wrong slot for " + Arrays.toString(probe));
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldProbeFewerSlotsForUniformIds() {
+        Random random = new Random(7);
+        List<byte[]> timestamps = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            timestamps.add(ByteBuffer.allocate(Long.BYTES).putLong(1_700_000_000_000L + i * 1000L + random.nextInt(500)).array());
+        }
+        Collections.shuffle(timestamps, random);
+
+        assertTrue(averageProbes(timestamps, KeySearch.BINARY) > 6);
+        assertTrue(averageProbes(timestamps, KeySearch.INTERPOLATION) < 3);
+        assertTrue(averageProbes(longKeys(random, 200, 1L << 48), KeySearch.INTERPOLATION) < 5);
+    }
+
+    private static double averageProbes(List<byte[]> keys, KeySearch keySearch) {
+        CountingLeafPage page = fill(keys, keySearch);
+        page.comparisons = 0;
+        for (byte[] key : keys) {
+            assertNotNull(page.get(key));
+        }
+        return page.comparisons / (double) keys.size();
+    }
+
+    private static CountingLeafPage fill(List<byte[]> keys, KeySearch keySearch) {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        LeafPage.newPage(1, buffer);
+        CountingLeafPage page = new CountingLeafPage(buffer);
+        page.setKeySearch(keySearch);
+        for (byte[] key : keys) {
+            assertTrue(page.put(key, new byte[]{1}));
+        }
+        return page;
+    }
+
+    private static List<byte[]> longKeys(Random random, int count, long bound) {
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long id = bound == -1L ? random.nextLong() : random.nextLong(bound);
+            keys.add(ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+        }
+        return keys;
+    }
+
+    private static List<byte[]> skewedKeys(Random random, int count) {
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long id = i % 10 == 0 ? Long.MAX_VALUE - random.nextInt(1000) : random.nextInt(1000);
+            keys.add(ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+        }
+        return keys;
+    }
+
+    private static List<byte[]> stringKeys(int count) {
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(String.format("key-%06d", i).getBytes());
+        }
+        Collections.shuffle(keys, new Random(3));
+        return keys;
+    }
+
+    private static List<byte[]> mixedLengthKeys(Random random, int count) {
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[random.nextInt(12)];
+            random.nextBytes(key);
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static class CountingLeafPage extends LeafPage {
+        private int comparisons;
+
+        CountingLeafPage(ByteBuffer buffer) {
+            super(buffer);
+        }
+
+        @Override
+        protected int compareKeyAt(int idx, byte[] key) {
+            comparisons++;
+            return super.compareKeyAt(idx, key);
+        }
+    }
+}
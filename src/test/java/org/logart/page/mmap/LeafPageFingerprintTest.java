@@ -0,0 +1,101 @@
+package org.logart.page.mmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.logart.page.mmap.AbstractPage.PAGE_SIZE;
+
+public class LeafPageFingerprintTest {
+
+    @Test
+    void shouldFindKeysInsertedInAnyOrder() {
+        for (ByteBuffer buffer : List.of(ByteBuffer.allocate(PAGE_SIZE), ByteBuffer.allocateDirect(PAGE_SIZE))) {
+            LeafPage page = (LeafPage) LeafPage.newPage(1, buffer, true);
+            List<Integer> ids = shuffled(60);
+            for (int i : ids) {
+                assertTrue(page.put(key(i), value(i)));
+            }
+            page.put(key(7), "updated".getBytes());
+
+            for (int i = 0; i < 60; i++) {
+                byte[] expected = i == 7 ? "updated".getBytes() : value(i);
+                assertArrayEquals(expected, page.get(key(i)), "Wrong value for key " + i);
+                assertArrayEquals(key(i), page.getEntry(i)[0], "Slots should stay sorted");
+            }
+            assertNull(page.get(key(60)));
+            assertNull(page.getView("missing".getBytes()));
+        }
+    }
+
+    @Test
+    void shouldKeepFingerprintsWhenPageIsFull() {
+        LeafPage page = (LeafPage) LeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), true);
+        int count = 0;
+        while (page.put(key(count * 7919 % 100_000), value(count))) {
+            count++;
+        }
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals(value(i), page.get(key(i * 7919 % 100_000)));
+        }
+        LeafPage plain = (LeafPage) LeafPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE));
+        int plainCount = 0;
+        while (plain.put(key(plainCount * 7919 % 100_000), value(plainCount))) {
+            plainCount++;
+        }
+        assertTrue(count < plainCount, "Fingerprints take a byte per entry");
+    }
+
+    @Test
+    void shouldCopyBetweenLayouts() {
+        LeafPage plain = (LeafPage) LeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE));
+        for (int i : shuffled(40)) {
+            plain.put(key(i), value(i));
+        }
+        LeafPage withFingerprints = (LeafPage) LeafPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE), true);
+        withFingerprints.copyEntries(plain, 10, 30);
+        LeafPage back = (LeafPage) LeafPage.newPage(3, ByteBuffer.allocate(PAGE_SIZE));
+        back.copyEntries(withFingerprints, 5, 20);
+
+        assertEquals(20, withFingerprints.getEntryCount());
+        assertEquals(15, back.getEntryCount());
+        for (int i = 10; i < 30; i++) {
+            assertArrayEquals(value(i), withFingerprints.get(key(i)));
+        }
+        for (int i = 15; i < 30; i++) {
+            assertArrayEquals(value(i), back.get(key(i)));
+        }
+        assertNull(withFingerprints.get(key(5)));
+        assertNull(back.get(key(10)));
+
+        // a compacting copy keeps the layout of the page it writes to
+        plain.put(key(3), "updated".getBytes());
+        LeafPage compacted = (LeafPage) LeafPage.newPage(4, ByteBuffer.allocate(PAGE_SIZE), true);
+        compacted.copy(plain);
+        assertTrue(compacted.hasFingerprints());
+        assertArrayEquals("updated".getBytes(), compacted.get(key(3)));
+        assertArrayEquals(value(39), compacted.get(key(39)));
+    }
+
+    private static List<Integer> shuffled(int count) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(i);
+        }
+        Collections.shuffle(ids, new Random(42));
+        return ids;
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%06d", i).getBytes();
+    }
+
+    private static byte[] value(int i) {
+        return ("value-" + i).getBytes();
+    }
+}
@@ -0,0 +1,81 @@
+package org.logart.page.mmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.logart.page.mmap.AbstractPage.PAGE_SIZE;
+
+public class LeafPageKeyPrefixTest {
+
+    @Test
+    void shouldOrderKeysLikeUnsignedComparison() {
+        List<byte[]> keys = new ArrayList<>(List.of(
+                new byte[]{1}, new byte[]{1, 0}, new byte[]{1, 0, 0, 0, 0}, new byte[]{1, 0, 0, 0, 1},
+                new byte[]{(byte) 0xFF}, new byte[]{(byte) 0x80, 1}, new byte[]{0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 5},
+                "abcd".getBytes(), "abcde".getBytes(), "abcdd".getBytes(), "abc".getBytes(), new byte[0]));
+        Collections.shuffle(keys, new Random(7));
+        LeafPage page = (LeafPage) LeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), false, true);
+        for (int i = 0; i < keys.size(); i++) {
+            assertTrue(page.put(keys.get(i), new byte[]{(byte) i}));
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            assertArrayEquals(new byte[]{(byte) i}, page.get(keys.get(i)), "Wrong value for key " + Arrays.toString(keys.get(i)));
+        }
+        assertNull(page.get(new byte[]{1, 0, 0}));
+        keys.sort(Arrays::compareUnsigned);
+        for (int i = 0; i < keys.size(); i++) {
+            assertArrayEquals(keys.get(i), page.getEntry(i)[0], "Slots should stay sorted");
+        }
+    }
+
+    @Test
+    void shouldResolveKeysWithLongCommonPrefix() {
+        LeafPage page = (LeafPage) LeafPage.newPage(1, ByteBuffer.allocate(PAGE_SIZE), true, true);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 80; i++) {
+            ids.add(i);
+        }
+        Collections.shuffle(ids, new Random(42));
+        for (int i : ids) {
+            assertTrue(page.put(key(i), value(i)));
+        }
+        page.put(key(11), "updated".getBytes());
+
+        for (int i = 0; i < 80; i++) {
+            byte[] expected = i == 11 ? "updated".getBytes() : value(i);
+            assertArrayEquals(expected, page.get(key(i)));
+            assertArrayEquals(key(i), page.getEntry(i)[0]);
+        }
+
+        LeafPage plain = (LeafPage) LeafPage.newPage(2, ByteBuffer.allocate(PAGE_SIZE));
+        plain.copyEntries(page, 20, 60);
+        LeafPage back = (LeafPage) LeafPage.newPage(3, ByteBuffer.allocate(PAGE_SIZE), false, true);
+        back.copy(page);
+        back.copyEntries(plain, 10, 30);
+        assertEquals(40, plain.getEntryCount());
+        assertEquals(20, back.getEntryCount());
+        for (int i = 30; i < 50; i++) {
+            assertArrayEquals(value(i), plain.get(key(i)));
+            assertArrayEquals(value(i), back.get(key(i)));
+        }
+        assertNull(back.get(key(29)));
+        assertNull(back.get(key(50)));
+    }
+
+    private static byte[] key(int i) {
+        // shared prefix longer than the cached one, so every probe falls back to the payload
+        return String.format("tenant-0001/key-%06d", i).getBytes();
+    }
+
+    private static byte[] value(int i) {
+        return ("value-" + i).getBytes();
+    }
+}
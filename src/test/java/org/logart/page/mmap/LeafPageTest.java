@@ -35,6 +35,75 @@ public class LeafPageTest {
         assertArrayEquals(value, retrieved);
     }
 
+    @Test
+    void testGetViewSharesPageMemory() {
+        byte[] key = "key1".getBytes();
+        byte[] value = "value1".getBytes();
+        page.put("key0".getBytes(), "value0".getBytes());
+        page.put(key, value);
+
+        ByteBuffer view = page.getView(key);
+        assertTrue(view.isReadOnly());
+        assertEquals(value.length, view.remaining());
+        byte[] read = new byte[view.remaining()];
+        view.get(read);
+        assertArrayEquals(value, read);
+        assertNull(page.getView("missing".getBytes()));
+
+        // the view is backed by the page buffer, not by a copy
+        int valueStart = page.getFreeSpaceOffset();
+        while (buffer.get(valueStart) != 'v' || buffer.get(valueStart + 5) != '1') {
+            valueStart++;
+        }
+        buffer.put(valueStart, (byte) 'V');
+        assertEquals('V', page.getView(key).get(0));
+    }
+
+    @Test
+    void testCopyEntriesPacksPayloads() {
+        for (int i = 9; i >= 0; i--) {
+            page.put(("key" + i).getBytes(), ("value" + i).getBytes());
+        }
+        // leaves dead payload behind
+        page.put("key3".getBytes(), "updated".getBytes());
+
+        LeafPage copy = (LeafPage) LeafPage.newPage(2L, ByteBuffer.allocate(PAGE_SIZE));
+        copy.copyEntries(page, 2, 6);
+
+        assertEquals(4, copy.getEntryCount());
+        assertArrayEquals("key2".getBytes(), copy.getEntry(0)[0]);
+        assertArrayEquals("updated".getBytes(), copy.get("key3".getBytes()));
+        assertArrayEquals("value5".getBytes(), copy.get("key5".getBytes()));
+        assertNull(copy.get("key6".getBytes()));
+        int livePayload = 3 * ("key0".length() + "value0".length() + PAYLOAD_SIZE_FIELD_SIZE * 2)
+                + "key3".length() + "updated".length() + PAYLOAD_SIZE_FIELD_SIZE * 2;
+        assertEquals(PAGE_SIZE - livePayload, copy.getFreeSpaceOffset());
+    }
+
+    @Test
+    void testCopyDropsSpaceLeftByUpdates() {
+        page.put("a".getBytes(), "1".getBytes());
+        page.put("b".getBytes(), "2".getBytes());
+        int compactFreeSpace = page.getFreeSpaceOffset();
+        for (int i = 0; i < 100; i++) {
+            page.put("a".getBytes(), "1".getBytes());
+        }
+        assertEquals(100 * 6, page.getFragmentedSpace());
+        int capacity = page.availableSpace() + 100;
+        assertTrue(page.isAlmostFull(capacity));
+        assertFalse(page.needsSplit(capacity), "A compacted copy has room for the entry");
+
+        LeafPage copy = (LeafPage) LeafPage.newPage(2L, ByteBuffer.allocate(PAGE_SIZE));
+        copy.copy(page);
+
+        assertEquals(2L, copy.pageId());
+        assertTrue(copy.isLeaf());
+        assertEquals(0, copy.getFragmentedSpace());
+        assertEquals(compactFreeSpace, copy.getFreeSpaceOffset());
+        assertArrayEquals("1".getBytes(), copy.get("a".getBytes()));
+        assertArrayEquals("2".getBytes(), copy.get("b".getBytes()));
+    }
+
     @Test
     void testOverwriteKey() {
         byte[] key = "dup".getBytes();
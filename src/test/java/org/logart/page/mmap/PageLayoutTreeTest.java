@@ -0,0 +1,92 @@
+package org.logart.page.mmap;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.logart.BPlusTree;
+import org.logart.DefaultBPlusTree;
+import org.logart.node.DefaultNodeManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.logart.page.mmap.AbstractPage.PAGE_SIZE;
+
+/**
+ * Layout agnostic checks of a tree over every page layout option, tests of a single layout only check what
+ * is specific to it.
+ */
+public class PageLayoutTreeTest {
+    // shared prefix longer than the cached key prefix, same length for fixed size leaves
+    private static final int KEY_SIZE = key(0).length;
+
+    static Stream<Arguments> layouts() {
+        return Stream.of(
+                Arguments.of("slotted", (Layout) file -> new MMAPBasedPageManager(file, PAGE_SIZE)),
+                Arguments.of("fingerprints", (Layout) file -> new MMAPBasedPageManager(file, PAGE_SIZE, true)),
+                Arguments.of("key prefixes", (Layout) file -> new MMAPBasedPageManager(file, PAGE_SIZE, false, true)),
+                Arguments.of("interpolation search", (Layout) file -> new MMAPBasedPageManager(file, PAGE_SIZE,
+                        false, false, KeySearch.INTERPOLATION)),
+                Arguments.of("eytzinger internal pages", (Layout) file -> new MMAPBasedPageManager(file, PAGE_SIZE,
+                        false, false, KeySearch.BINARY, true)),
+                Arguments.of("compact pages", (Layout) file -> new MMAPBasedPageManager(file, PAGE_SIZE,
+                        false, false, KeySearch.BINARY, false, true)),
+                Arguments.of("all options", (Layout) file -> new MMAPBasedPageManager(file, PAGE_SIZE,
+                        true, true, KeySearch.INTERPOLATION, true, true)),
+                Arguments.of("fixed size leaves", (Layout) file -> new MMAPBasedPageManager(file, PAGE_SIZE,
+                        KEY_SIZE, KEY_SIZE, KeySearch.BINARY))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("layouts")
+    void shouldServeTree(String name, Layout layout) throws Exception {
+        Path tempFile = Files.createTempFile("bplustree-layout-test", ".db");
+        TreeSet<Integer> expected = new TreeSet<>();
+        try {
+            BPlusTree tree = new DefaultBPlusTree(new DefaultNodeManager(layout.open(tempFile.toFile())));
+            Random random = new Random(42);
+            for (int i = 0; i < 2_000; i++) {
+                int id = random.nextInt(50_000);
+                tree.put(key(id), key(id));
+                expected.add(id);
+            }
+            tree.deleteRange(key(10_000), key(20_000));
+            expected.subSet(10_000, 20_000).clear();
+            for (int id = 0; id < 50_000; id += 7) {
+                assertArrayEquals(expected.contains(id) ? key(id) : null, tree.get(key(id)), name + ": wrong value for " + id);
+            }
+            tree.close();
+
+            // the file is opened with the default layout, pages of both layouts are read side by side
+            BPlusTree reopened = new DefaultBPlusTree(new DefaultNodeManager(new MMAPBasedPageManager(tempFile.toFile(), PAGE_SIZE)));
+            reopened.load();
+            for (int i = 0; i < 200; i++) {
+                reopened.put(key(200_000 + i), key(200_000 + i));
+                expected.add(200_000 + i);
+            }
+            for (int id : expected) {
+                assertArrayEquals(key(id), reopened.get(key(id)), name + ": wrong value for " + id);
+            }
+            assertNull(reopened.get(key(999_999)));
+            reopened.close();
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static byte[] key(int i) {
+        return String.format("tenant-0001/key-%06d", i).getBytes();
+    }
+
+    @FunctionalInterface
+    interface Layout {
+        MMAPBasedPageManager open(File file) throws IOException;
+    }
+}